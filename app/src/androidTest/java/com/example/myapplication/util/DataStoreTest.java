@@ -0,0 +1,229 @@
+package com.example.myapplication.util;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+import com.example.myapplication.model.Tag;
+import com.example.myapplication.model.TagType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of DataStore's mutators: photo and album lookups stay right, starting
+ * from a saved library whose albums load unloaded, as they do at startup. Runs against a
+ * scratch files directory and resets DataStore before and after each test.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DataStoreTest {
+
+    private File dir;
+    private Context context;
+    private List<String> vacation;
+    private List<String> family;
+
+    @Before
+    public void setUp() throws IOException {
+        Context target = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dir = Files.createTempDirectory(target.getCacheDir().toPath(), "datastore").toFile();
+        context = new ContextWrapper(target) {
+            @Override
+            public File getFilesDir() {
+                return dir;
+            }
+
+            @Override
+            public File getCacheDir() {
+                return dir;
+            }
+
+            @Override
+            public Context getApplicationContext() {
+                return this;
+            }
+        };
+        List<Album> albums = new ArrayList<>();
+        vacation = addAlbum(albums, "Vacation", 4);
+        family = addAlbum(albums, "Family", 3);
+        albums.add(new Album("Empty"));
+        DataStore.reset();
+        StorageManager.saveAlbums(context, albums);
+        DataStore.reset();
+    }
+
+    @After
+    public void tearDown() {
+        DataStore.flush(context);
+        DataStore.reset();
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void load_leavesAlbumsUnloaded() {
+        List<Album> albums = DataStore.getAlbums(context);
+        assertEquals(3, albums.size());
+        assertFalse(albums.get(0).isLoaded());
+        assertEquals(4, albums.get(0).getPhotoCount());
+        // Photos of unloaded albums are only found once something loads them.
+        assertNull(DataStore.findPhotoById(vacation.get(0)));
+        assertConsistent();
+    }
+
+    @Test
+    public void renamePhoto_loadsOnlyItsAlbum() {
+        DataStore.getAlbums(context);
+        assertTrue(DataStore.renamePhotoById(context, vacation.get(1), "renamed.jpg"));
+        assertEquals("renamed.jpg", DataStore.findPhotoById(vacation.get(1)).getFilename());
+        assertEquals("Vacation", DataStore.findAlbumOfPhoto(vacation.get(1)).getName());
+        assertFalse(DataStore.findAlbumByName("Family").isLoaded());
+        assertFalse(DataStore.renamePhotoById(context, "missing", "x.jpg"));
+        assertConsistent();
+    }
+
+    @Test
+    public void movePhoto_betweenUnloadedAlbums() {
+        DataStore.getAlbums(context);
+        assertTrue(DataStore.movePhotoById(context, "Vacation", "Family", vacation.get(2)));
+        assertEquals("Family", DataStore.findAlbumOfPhoto(vacation.get(2)).getName());
+        assertEquals(3, DataStore.findAlbumByName("Vacation").getPhotoCount());
+        Album target = DataStore.findAlbumByName("Family");
+        assertEquals(4, target.getPhotoCount());
+        assertEquals(vacation.get(2), target.getPhotos().get(3).getId());
+        // Not in the named source album any more.
+        assertFalse(DataStore.movePhotoById(context, "Vacation", "Family", vacation.get(2)));
+        assertConsistent();
+    }
+
+    @Test
+    public void movePhotos_reportsPhotosNotInTheSourceAlbum() {
+        DataStore.getAlbums(context);
+        BatchResult<String> result = DataStore.movePhotos(context,
+                Arrays.asList(family.get(0), vacation.get(0), family.get(2)), "Family", "Empty");
+        assertEquals(BatchResult.Status.OK, result.getStatus(family.get(0)));
+        assertEquals(BatchResult.Status.NOT_FOUND, result.getStatus(vacation.get(0)));
+        assertEquals(BatchResult.Status.OK, result.getStatus(family.get(2)));
+        assertEquals("Empty", DataStore.findAlbumOfPhoto(family.get(0)).getName());
+        assertEquals("Family", DataStore.findAlbumOfPhoto(family.get(1)).getName());
+        assertConsistent();
+    }
+
+    @Test
+    public void removePhoto_dropsLookupAndFile() {
+        DataStore.getAlbums(context);
+        File image = new File(dir, "Vacation0.jpg");
+        assertTrue(image.exists());
+        assertTrue(DataStore.removePhotoById(context, "Vacation", vacation.get(0)));
+        assertNull(DataStore.findPhotoById(vacation.get(0)));
+        assertNull(DataStore.findAlbumOfPhoto(vacation.get(0)));
+        assertEquals(3, DataStore.findAlbumByName("Vacation").getPhotoCount());
+        assertFalse(image.exists());
+        assertFalse(DataStore.removePhotoById(context, "Vacation", vacation.get(0)));
+        assertConsistent();
+    }
+
+    @Test
+    public void removePhotos_acrossAlbums() {
+        DataStore.getAlbums(context);
+        BatchResult<String> result = DataStore.removePhotos(context,
+                Arrays.asList(vacation.get(3), family.get(1), "missing"));
+        assertEquals(BatchResult.Status.OK, result.getStatus(vacation.get(3)));
+        assertEquals(BatchResult.Status.OK, result.getStatus(family.get(1)));
+        assertEquals(BatchResult.Status.NOT_FOUND, result.getStatus("missing"));
+        assertNull(DataStore.findPhotoById(vacation.get(3)));
+        assertNull(DataStore.findPhotoById(family.get(1)));
+        assertEquals(2, DataStore.findAlbumByName("Family").getPhotoCount());
+        assertConsistent();
+    }
+
+    @Test
+    public void deleteAlbum_unloaded() {
+        DataStore.getAlbums(context);
+        assertTrue(DataStore.deleteAlbum(context, "Family"));
+        assertNull(DataStore.findAlbumByName("Family"));
+        for (String id : family) {
+            assertNull(DataStore.findPhotoById(id));
+            assertNull(DataStore.findAlbumOfPhoto(id));
+        }
+        assertFalse(DataStore.renamePhotoById(context, family.get(0), "x.jpg"));
+        assertTrue(DataStore.renamePhotoById(context, vacation.get(0), "x.jpg"));
+        assertEquals(2, DataStore.getAlbums(context).size());
+        assertConsistent();
+    }
+
+    @Test
+    public void renameAlbum_keepsItUnloadedAndItsPhotosReachable() {
+        DataStore.getAlbums(context);
+        assertTrue(DataStore.renameAlbum(context, "Family", "Relatives"));
+        Album renamed = DataStore.findAlbumByName("relatives");
+        assertNotNull(renamed);
+        assertFalse(renamed.isLoaded());
+        assertNull(DataStore.findAlbumByName("Family"));
+        assertTrue(DataStore.removePhotoById(context, "Relatives", family.get(0)));
+        assertEquals("Relatives", DataStore.findAlbumOfPhoto(family.get(1)).getName());
+        assertConsistent();
+    }
+
+    @Test
+    public void addTag_isSearchable() {
+        DataStore.getAlbums(context);
+        assertTrue(DataStore.addTag(context, family.get(2), new Tag(TagType.PERSON, "Ann")));
+        assertFalse(DataStore.addTag(context, family.get(2), new Tag(TagType.PERSON, "ann")));
+        List<Photo> found = SearchManager.searchByTag(DataStore.getTagIndex(context), TagType.PERSON, "an");
+        assertEquals(1, found.size());
+        assertEquals(family.get(2), found.get(0).getId());
+        assertConsistent();
+    }
+
+    /** Every photo of every loaded album is found by ID, in that album. */
+    private void assertConsistent() {
+        for (Album a : DataStore.getAlbums(context)) {
+            assertSame(a, DataStore.findAlbumByName(a.getName()));
+            if (!a.isLoaded()) continue;
+            for (Photo p : a.getPhotos()) {
+                assertSame(p, DataStore.findPhotoById(p.getId()));
+                assertSame(a, DataStore.findAlbumOfPhoto(p.getId()));
+            }
+        }
+    }
+
+    private List<String> addAlbum(List<Album> albums, String name, int photos) throws IOException {
+        Album album = new Album(name);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < photos; i++) {
+            File image = new File(dir, name + i + ".jpg");
+            try (FileOutputStream out = new FileOutputStream(image)) {
+                out.write(i);
+            }
+            Photo p = new Photo(image.getPath());
+            album.addPhoto(p);
+            ids.add(p.getId());
+        }
+        albums.add(album);
+        return ids;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.myapplication.util;
+
+import android.content.Context;
+import android.util.JsonReader;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+import com.example.myapplication.model.Tag;
+import com.example.myapplication.model.TagType;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark for library persistence on a synthetic 100k-photo library.
+ * Compares the streaming albums.json codec against the previous org.json DOM path, and the
+ * binary snapshot against JSON, logging time and heap growth under the "PersistenceBenchmark" tag.
+ * Also measures the heap saved by tag interning on a 50k-photo library.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PersistenceBenchmark {
+    private static final String TAG = "PersistenceBenchmark";
+    private static final int PHOTOS = 100_000;
+    private static final int ALBUMS = 20;
+    private static final int INTERNING_PHOTOS = 50_000;
+
+    static List<Album> buildLibrary(int photoCount, int albumCount) {
+        List<Album> albums = new ArrayList<>();
+        for (int a = 0; a < albumCount; a++) {
+            albums.add(new Album("Album " + a));
+        }
+        for (int i = 0; i < photoCount; i++) {
+            Photo p = new Photo("/data/images/photo" + i + ".jpg");
+            p.addTag(new Tag(TagType.PERSON, "Person " + (i % 300)));
+            p.addTag(new Tag(TagType.LOCATION, "Place " + (i % 120)));
+            albums.get(i % albumCount).addPhoto(p);
+        }
+        return albums;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        rt.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    @Test
+    public void streamingCodecVersusDom() throws Exception {
+        byte[] json = StorageManager.encodeJson(buildLibrary(PHOTOS, ALBUMS));
+        Log.i(TAG, "albums.json fixture: " + json.length + " bytes");
+
+        long base = usedHeap();
+        long start = System.nanoTime();
+        JSONArray root = new JSONArray(new String(json, StandardCharsets.UTF_8));
+        long domHeap = usedHeap() - base;
+        int domPhotos = 0;
+        for (int i = 0; i < root.length(); i++) {
+            JSONObject albumObj = root.getJSONObject(i);
+            domPhotos += albumObj.getJSONArray("photos").length();
+        }
+        long domMs = (System.nanoTime() - start) / 1_000_000;
+        root = null;
+
+        base = usedHeap();
+        start = System.nanoTime();
+        List<Album> loaded;
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(json), StandardCharsets.UTF_8))) {
+            loaded = StorageManager.readAlbums(reader);
+        }
+        long streamMs = (System.nanoTime() - start) / 1_000_000;
+        long streamHeap = usedHeap() - base;
+
+        int streamPhotos = 0;
+        for (Album a : loaded) streamPhotos += a.getPhotoCount();
+        assertEquals(PHOTOS, domPhotos);
+        assertEquals(PHOTOS, streamPhotos);
+
+        Log.i(TAG, "load dom: " + domMs + " ms, document heap " + domHeap / 1024 + " KB (before model objects)");
+        Log.i(TAG, "load streaming: " + streamMs + " ms, model heap " + streamHeap / 1024 + " KB");
+
+        start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            StorageManager.writeAlbums(writer, loaded);
+        }
+        Log.i(TAG, "save streaming: " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        assertEquals(json.length, out.size());
+    }
+
+    @Test
+    public void binarySnapshotVersusJson() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        List<Album> library = buildLibrary(PHOTOS, ALBUMS);
+        File jsonFile = new File(context.getCacheDir(), "bench-albums.json");
+        File binFile = new File(context.getCacheDir(), "bench-albums.bin");
+        try (FileOutputStream out = new FileOutputStream(jsonFile)) {
+            out.write(StorageManager.encodeJson(library));
+        }
+        try (FileOutputStream out = new FileOutputStream(binFile)) {
+            out.write(BinarySnapshot.encode(library));
+        }
+        Log.i(TAG, "snapshot size: json " + jsonFile.length() / 1024 + " KB, binary " + binFile.length() / 1024 + " KB");
+
+        long start = System.nanoTime();
+        List<Album> fromJson;
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new FileInputStream(jsonFile), StandardCharsets.UTF_8))) {
+            fromJson = StorageManager.readAlbums(reader);
+        }
+        long jsonMs = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        List<Album> fromBinary = BinarySnapshot.read(binFile);
+        long binMs = (System.nanoTime() - start) / 1_000_000;
+
+        Log.i(TAG, "load json: " + jsonMs + " ms, load binary (mmap): " + binMs + " ms");
+        assertEquals(fromJson.size(), fromBinary.size());
+        for (int i = 0; i < fromJson.size(); i++) {
+            assertEquals(fromJson.get(i).getPhotoCount(), fromBinary.get(i).getPhotoCount());
+        }
+        jsonFile.delete();
+        binFile.delete();
+    }
+
+    @Test
+    public void tagInterningHeap() throws Exception {
+        byte[] json = StorageManager.encodeJson(buildLibrary(INTERNING_PHOTOS, ALBUMS));
+
+        // Before interning every parsed tag was its own Tag with its own value String;
+        // rebuild that shape directly as the baseline, and the same references interned.
+        long base = usedHeap();
+        List<Tag> perPhotoTags = new ArrayList<>(INTERNING_PHOTOS * 2);
+        for (int i = 0; i < INTERNING_PHOTOS; i++) {
+            perPhotoTags.add(new Tag(TagType.PERSON, new String("Person " + (i % 300))));
+            perPhotoTags.add(new Tag(TagType.LOCATION, new String("Place " + (i % 120))));
+        }
+        long uninternedHeap = usedHeap() - base;
+        assertEquals(INTERNING_PHOTOS * 2, perPhotoTags.size());
+        perPhotoTags = null;
+
+        base = usedHeap();
+        List<Tag> internedTags = new ArrayList<>(INTERNING_PHOTOS * 2);
+        for (int i = 0; i < INTERNING_PHOTOS; i++) {
+            internedTags.add(Tag.intern(new Tag(TagType.PERSON, new String("Person " + (i % 300)))));
+            internedTags.add(Tag.intern(new Tag(TagType.LOCATION, new String("Place " + (i % 120)))));
+        }
+        long internedHeap = usedHeap() - base;
+
+        List<Album> loaded;
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(json), StandardCharsets.UTF_8))) {
+            loaded = StorageManager.readAlbums(reader);
+        }
+        // 300 people and 120 places, each always spelled the same way, so one instance each,
+        // shared with the tags interned above.
+        Set<Tag> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Album a : loaded) {
+            for (Photo p : a.getPhotos()) distinct.addAll(p.getTags());
+        }
+        assertEquals(420, distinct.size());
+        assertTrue(distinct.contains(internedTags.get(0)));
+        assertTrue(Tag.internedCount() >= distinct.size());
+        Log.i(TAG, "tags: " + INTERNING_PHOTOS * 2 + " references to per-photo instances use "
+                + uninternedHeap / 1024 + " KB, to interned instances " + internedHeap / 1024
+                + " KB; the loaded library holds " + distinct.size() + " Tag instances");
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.myapplication.util;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark for DataStore's read path. Readers look photos up by ID while a
+ * writer keeps moving photos between albums, first with every access on one monitor (the
+ * previous DataStore model) and then with lock-free reads of published LibrarySnapshots.
+ * Each thread count gets warmup iterations followed by measured ones, and the best
+ * measured reads/ms is logged under the "SnapshotReadBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SnapshotReadBenchmark {
+    private static final String TAG = "SnapshotReadBenchmark";
+    private static final int PHOTOS = 20_000;
+    private static final int ALBUMS = 20;
+    private static final int[] READER_THREADS = {1, 2, 4, 8};
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int MEASURED_ITERATIONS = 3;
+    private static final long ITERATION_MS = 500;
+
+    private interface Reader {
+        Photo read(String photoId);
+    }
+
+    private final Object lock = new Object();
+    private List<Album> albums;
+    private LibraryIndex library;
+    private List<String> ids;
+    private volatile LibrarySnapshot snapshot;
+
+    private void setUp() {
+        albums = PersistenceBenchmark.buildLibrary(PHOTOS, ALBUMS);
+        library = new LibraryIndex();
+        library.rebuild(albums);
+        ids = new ArrayList<>(PHOTOS);
+        for (Album a : albums) {
+            for (Photo p : a.getPhotos()) ids.add(p.getId());
+        }
+        snapshot = LibrarySnapshot.EMPTY.next(albums);
+    }
+
+    @Test
+    public void readThroughputScaling() throws Exception {
+        setUp();
+        for (int threads : READER_THREADS) {
+            double locked = best(threads, id -> {
+                synchronized (lock) {
+                    return library.photo(id);
+                }
+            }, false);
+            double lockFree = best(threads, id -> snapshot.findPhoto(id), true);
+            Log.i(TAG, threads + " reader(s): monitor " + Math.round(locked) + " reads/ms, snapshot "
+                    + Math.round(lockFree) + " reads/ms");
+        }
+    }
+
+    private double best(int threads, Reader reader, boolean publish) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) iteration(threads, reader, publish);
+        double best = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) best = Math.max(best, iteration(threads, reader, publish));
+        return best;
+    }
+
+    /** Runs readers and one writer for {@link #ITERATION_MS} and returns reads per millisecond. */
+    private double iteration(int threads, Reader reader, boolean publish) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads + 1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            workers.add(new Thread(() -> {
+                long n = 0;
+                int i = seed * 7919;
+                while (running.get()) {
+                    if (reader.read(ids.get(i++ % ids.size())) != null) n++;
+                }
+                reads.addAndGet(n);
+                done.countDown();
+            }));
+        }
+        workers.add(new Thread(() -> {
+            int i = 0;
+            while (running.get()) {
+                synchronized (lock) {
+                    Photo p = library.photo(ids.get(i++ % ids.size()));
+                    Album from = library.albumOf(p.getId());
+                    library.movePhoto(p, from, albums.get((albums.indexOf(from) + 1) % albums.size()));
+                    if (publish) snapshot = snapshot.next(albums);
+                }
+            }
+            done.countDown();
+        }));
+        long start = System.nanoTime();
+        for (Thread w : workers) w.start();
+        Thread.sleep(ITERATION_MS);
+        running.set(false);
+        done.await();
+        double elapsedMs = (System.nanoTime() - start) / 1e6;
+        assertTrue(reads.get() > 0);
+        return reads.get() / elapsedMs;
+    }
+}
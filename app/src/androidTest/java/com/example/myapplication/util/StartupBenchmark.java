@@ -0,0 +1,99 @@
+package com.example.myapplication.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark for what the album list needs before its first frame: reading the
+ * library and binding every album's name, photo count and cover. Compares the single-file
+ * binary snapshot decoded in full, the same file read lazily, and the album manifest with
+ * per-album segments, across library sizes. Logs the best time under the "StartupBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+    private static final String TAG = "StartupBenchmark";
+    private static final int[] PHOTOS = {1_000, 10_000, 50_000, 100_000};
+    private static final int ALBUMS = 20;
+    private static final int ITERATIONS = 5;
+
+    private interface Loader {
+        List<Album> load() throws Exception;
+    }
+
+    @Test
+    public void firstFrameAcrossLibrarySizes() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File dir = new File(context.getCacheDir(), "bench-startup");
+        File segmentDir = new File(dir, "segments");
+        assertTrue(segmentDir.isDirectory() || segmentDir.mkdirs());
+        File binFile = new File(dir, "albums.bin");
+        File manifestFile = new File(dir, "albums.manifest");
+
+        for (int photos : PHOTOS) {
+            List<Album> library = PersistenceBenchmark.buildLibrary(photos, ALBUMS);
+            try (FileOutputStream out = new FileOutputStream(binFile)) {
+                out.write(BinarySnapshot.encode(library));
+            }
+            StorageManager.Encoded encoded = AlbumManifest.encode(library);
+            for (Map.Entry<String, byte[]> segment : encoded.segments.entrySet()) {
+                try (FileOutputStream out = new FileOutputStream(new File(segmentDir, segment.getKey()))) {
+                    out.write(segment.getValue());
+                }
+            }
+            try (FileOutputStream out = new FileOutputStream(manifestFile)) {
+                out.write(encoded.snapshot);
+            }
+
+            double full = best(() -> BinarySnapshot.read(binFile), photos);
+            double lazy = best(() -> BinarySnapshot.readLazy(binFile), photos);
+            double manifest = best(() -> AlbumManifest.read(manifestFile, segmentDir), photos);
+            Log.i(TAG, photos + " photos: full decode " + format(full) + " ms, lazy single file "
+                    + format(lazy) + " ms, manifest " + format(manifest) + " ms (manifest "
+                    + manifestFile.length() + " bytes)");
+
+            AlbumManifest.deleteUnreferenced(segmentDir);
+        }
+        binFile.delete();
+        manifestFile.delete();
+    }
+
+    private static double best(Loader loader, int photos) throws Exception {
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            List<Album> albums = loader.load();
+            int count = 0;
+            for (Album a : albums) {
+                // What AlbumAdapter binds for each row.
+                a.getName();
+                count += a.getPhotoCount();
+                Photo cover = a.getCoverPhoto();
+                assertNotNull(cover);
+            }
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+            assertEquals(ALBUMS, albums.size());
+            assertEquals(photos, count);
+        }
+        return best;
+    }
+
+    private static String format(double ms) {
+        return String.format(java.util.Locale.ROOT, "%.2f", ms);
+    }
+}
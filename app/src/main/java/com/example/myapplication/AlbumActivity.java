@@ -1,5 +1,6 @@
 package com.example.myapplication;
 
+import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
@@ -15,12 +16,21 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.myapplication.adapter.PhotoAdapter;
 import com.example.myapplication.model.Album;
 import com.example.myapplication.model.Photo;
+import com.example.myapplication.util.BatchResult;
 import com.example.myapplication.util.DataStore;
+import com.example.myapplication.util.ImportPipeline;
+import com.example.myapplication.util.LibraryEvent;
+import com.example.myapplication.util.LibraryEvents;
+import com.example.myapplication.util.LibrarySnapshot;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
-public class AlbumActivity extends AppCompatActivity implements PhotoAdapter.OnPhotoClickListener {
+public class AlbumActivity extends AppCompatActivity
+        implements PhotoAdapter.OnPhotoClickListener, LibraryEvents.Listener {
 
     private static final int PICK_IMAGE = 1;
     private static final int PHOTO_REQUEST_CODE = 2;
@@ -30,32 +40,45 @@ public class AlbumActivity extends AppCompatActivity implements PhotoAdapter.OnP
     private PhotoAdapter photoAdapter;
     private TextView albumTitle;
     private TextView emptyMessage;
+    private ImportPipeline.Task importTask;
+    // Loads an unloaded album's photos for the pick-photo dialogs off the main thread.
+    private final ExecutorService photoLoader = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, "AlbumPhotoLoader"));
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_album);
 
-        album = (Album) getIntent().getSerializableExtra("album");
-        if (album != null) {
-            album = DataStore.findAlbumByName(album.getName());
-        }
+        LibrarySnapshot snapshot = DataStore.snapshot(this);
+        album = snapshot.findAlbum(getIntent().getStringExtra("albumName"));
 
         if (album == null) {
             finish();
             return;
         }
 
-        allAlbums = DataStore.getAlbums(this);
+        allAlbums = snapshot.getAlbums();
 
         albumTitle = findViewById(R.id.album_name_title);
         albumTitle.setText(album.getName());
 
         emptyMessage = findViewById(R.id.empty_photos_message);
         photoGrid = findViewById(R.id.photo_grid);
-        photoAdapter = new PhotoAdapter(this, album.getPhotos(), this);
-        photoGrid.setLayoutManager(new GridLayoutManager(this, 3));
+        photoAdapter = new PhotoAdapter(this, new ArrayList<>(), this);
+        photoAdapter.bindAlbum(snapshot, album.getName());
+        GridLayoutManager layout = new GridLayoutManager(this, 3);
+        photoGrid.setLayoutManager(layout);
         photoGrid.setAdapter(photoAdapter);
+        photoGrid.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                photoAdapter.setVisibleRange(layout.findFirstVisibleItemPosition(),
+                        layout.findLastVisibleItemPosition());
+            }
+        });
+        // Edits made here or in PhotoActivity arrive as events; no re-fetch on resume or result.
+        LibraryEvents.register(this);
 
         updateEmptyState();
 
@@ -67,19 +90,56 @@ public class AlbumActivity extends AppCompatActivity implements PhotoAdapter.OnP
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        allAlbums = DataStore.getAlbums(this);
-        if (album != null) {
-            album = DataStore.findAlbumByName(album.getName());
-            if (album != null) {
-                albumTitle.setText(album.getName());
-                photoAdapter.updatePhotos(album.getPhotos());
-                updateEmptyState();
-            } else {
-                finish();
-            }
+    public void onLibraryChanged(LibrarySnapshot snapshot, List<LibraryEvent> events) {
+        photoAdapter.onLibraryChanged(snapshot, events);
+        allAlbums = snapshot.getAlbums();
+        album = snapshot.findAlbum(photoAdapter.getAlbumName());
+        if (album == null) {
+            finish();
+            return;
+        }
+        albumTitle.setText(album.getName());
+        updateEmptyState();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        DataStore.persist(this);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        LibraryEvents.unregister(this);
+        photoLoader.shutdownNow();
+        // Copies already in flight still finish and are added to the album.
+        if (importTask != null) importTask.cancel();
+    }
+
+    /**
+     * Calls {@code show} on the main thread with every photo of the album. An album that is
+     * not loaded yet is decoded on a worker thread first, so the dialog opens once it is.
+     */
+    private void withPhotos(Consumer<List<Photo>> show) {
+        if (album.isLoaded()) {
+            show.accept(album.getPhotos());
+            return;
         }
+        final String name = album.getName();
+        final Context appContext = getApplicationContext();
+        photoLoader.execute(() -> {
+            Album loaded = DataStore.loadAlbum(appContext, name);
+            List<Photo> photos = loaded != null && loaded.isLoaded() ? loaded.getPhotos() : null;
+            runOnUiThread(() -> {
+                if (isFinishing() || isDestroyed()) return;
+                if (photos == null) {
+                    Toast.makeText(this, "Photos of this album cannot be read", Toast.LENGTH_SHORT).show();
+                } else {
+                    show.accept(photos);
+                }
+            });
+        });
     }
 
     private void addPhoto() {
@@ -90,13 +150,46 @@ public class AlbumActivity extends AppCompatActivity implements PhotoAdapter.OnP
     }
 
     private void showAlbumOptions() {
-        String[] options = {"Rename Album", "Delete Album", "Cancel"};
+        String[] options = {"Rename Album", "Delete Album", "Set Cover", "Cancel"};
         new AlertDialog.Builder(this)
                 .setTitle("Album Options")
                 .setItems(options, (dialog, which) -> {
                     if (which == 0) renameAlbum();
                     else if (which == 1) deleteAlbum();
+                    else if (which == 2) setCover();
+                })
+                .show();
+    }
+
+    private void setCover() {
+        if (album == null || album.getPhotoCount() == 0) {
+            Toast.makeText(this, "No photos to use as cover", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        withPhotos(this::showCoverDialog);
+    }
+
+    private void showCoverDialog(List<Photo> photos) {
+        CharSequence[] items = new CharSequence[photos.size()];
+        // Like Album.getCoverPhoto: the pinned cover if it is still here, else the first photo.
+        int checked = photos.isEmpty() ? -1 : 0;
+        String coverId = album.getCoverPhotoId();
+        for (int i = 0; i < photos.size(); i++) {
+            items[i] = photos.get(i).getFilename();
+            if (photos.get(i).getId().equals(coverId)) checked = i;
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle("Select cover photo")
+                .setSingleChoiceItems(items, checked, (dialog, which) -> {
+                    if (DataStore.setAlbumCover(this, album.getName(), photos.get(which).getId())) {
+                        setResult(RESULT_OK);
+                        Toast.makeText(this, "Cover updated", Toast.LENGTH_SHORT).show();
+                    }
+                    dialog.dismiss();
                 })
+                .setNegativeButton("Cancel", null)
                 .show();
     }
 
@@ -113,8 +206,6 @@ public class AlbumActivity extends AppCompatActivity implements PhotoAdapter.OnP
                     String newName = input.getText().toString().trim();
                     if (!newName.isEmpty()) {
                         if (DataStore.renameAlbum(this, album.getName(), newName)) {
-                            album = DataStore.findAlbumByName(newName);
-                            albumTitle.setText(newName);
                             setResult(RESULT_OK);
                             Toast.makeText(this, "Album renamed", Toast.LENGTH_SHORT).show();
                         } else {
@@ -142,12 +233,15 @@ public class AlbumActivity extends AppCompatActivity implements PhotoAdapter.OnP
     }
 
     private void removePhoto() {
-        if (album == null || album.getPhotos().isEmpty()) {
+        if (album == null || album.getPhotoCount() == 0) {
             Toast.makeText(this, "No photos to remove", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        List<Photo> photos = album.getPhotos();
+        withPhotos(this::showRemoveDialog);
+    }
+
+    private void showRemoveDialog(List<Photo> photos) {
         CharSequence[] items = new CharSequence[photos.size()];
         for (int i = 0; i < photos.size(); i++) {
             items[i] = photos.get(i).getFilename();
@@ -170,26 +264,24 @@ public class AlbumActivity extends AppCompatActivity implements PhotoAdapter.OnP
                         Toast.makeText(this, "No photos selected", Toast.LENGTH_SHORT).show();
                         return;
                     }
-                    for (Photo p : photosToRemove) {
-                        DataStore.removePhotoById(this, album.getName(), p.getId());
-                    }
-                    album = DataStore.findAlbumByName(album.getName());
-                    photoAdapter.updatePhotos(album.getPhotos());
-                    updateEmptyState();
+                    BatchResult<String> result = DataStore.removePhotos(this, photoIds(photosToRemove));
                     setResult(RESULT_OK);
-                    Toast.makeText(this, photosToRemove.size() + " photo(s) removed", Toast.LENGTH_SHORT).show();
+                    Toast.makeText(this, result.getSuccessCount() + " photo(s) removed", Toast.LENGTH_SHORT).show();
                 })
                 .setNegativeButton("Cancel", null)
                 .show();
     }
 
     private void movePhoto() {
-        if (album == null || album.getPhotos().isEmpty()) {
+        if (album == null || album.getPhotoCount() == 0) {
             Toast.makeText(this, "No photos to move", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        List<Photo> photos = album.getPhotos();
+        withPhotos(this::showMoveDialog);
+    }
+
+    private void showMoveDialog(List<Photo> photos) {
         CharSequence[] items = new CharSequence[photos.size()];
         for (int i = 0; i < photos.size(); i++) {
             items[i] = photos.get(i).getFilename();
@@ -219,7 +311,6 @@ public class AlbumActivity extends AppCompatActivity implements PhotoAdapter.OnP
     }
 
     private void showAlbumSelectionDialog(ArrayList<Photo> photosToMove) {
-        allAlbums = DataStore.getAlbums(this);
         List<Album> otherAlbums = new ArrayList<>();
         for (Album a : allAlbums) {
             if (!a.getName().equals(album.getName())) {
@@ -241,15 +332,8 @@ public class AlbumActivity extends AppCompatActivity implements PhotoAdapter.OnP
                 .setTitle("Move to Album")
                 .setItems(albumNames, (dialog, which) -> {
                     Album targetAlbum = otherAlbums.get(which);
-                    int movedCount = 0;
-                    for (Photo p : photosToMove) {
-                        if (DataStore.movePhotoById(this, album.getName(), targetAlbum.getName(), p.getId())) {
-                            movedCount++;
-                        }
-                    }
-                    album = DataStore.findAlbumByName(album.getName());
-                    photoAdapter.updatePhotos(album.getPhotos());
-                    updateEmptyState();
+                    int movedCount = DataStore.movePhotos(this, photoIds(photosToMove),
+                            album.getName(), targetAlbum.getName()).getSuccessCount();
                     setResult(RESULT_OK);
                     Toast.makeText(this, movedCount + " photo(s) moved to " + targetAlbum.getName(), Toast.LENGTH_SHORT).show();
                 })
@@ -263,41 +347,67 @@ public class AlbumActivity extends AppCompatActivity implements PhotoAdapter.OnP
         super.onActivityResult(requestCode, resultCode, data);
 
         if (requestCode == PICK_IMAGE && resultCode == RESULT_OK && data != null) {
-            int addedCount = 0;
+            List<Uri> imageUris = new ArrayList<>();
             if (data.getClipData() != null) { // Multiple images
                 for (int i = 0; i < data.getClipData().getItemCount(); i++) {
-                    Uri imageUri = data.getClipData().getItemAt(i).getUri();
-                    if (DataStore.addPhoto(this, album.getName(), imageUri) != null) {
-                        addedCount++;
-                    }
+                    imageUris.add(data.getClipData().getItemAt(i).getUri());
                 }
             } else if (data.getData() != null) { // Single image
-                Uri imageUri = data.getData();
-                if (DataStore.addPhoto(this, album.getName(), imageUri) != null) {
-                    addedCount++;
-                }
+                imageUris.add(data.getData());
             }
+            importPhotos(imageUris);
+        }
+    }
+
+    private void importPhotos(List<Uri> imageUris) {
+        AlertDialog progress = new AlertDialog.Builder(this)
+                .setTitle("Importing photos")
+                .setMessage("0 of " + imageUris.size())
+                .setCancelable(false)
+                .setNegativeButton("Cancel", (dialog, which) -> {
+                    if (importTask != null) importTask.cancel();
+                })
+                .show();
 
-            if (addedCount > 0) {
-                album = DataStore.findAlbumByName(album.getName());
-                photoAdapter.updatePhotos(album.getPhotos());
-                updateEmptyState();
-                setResult(RESULT_OK);
-                Toast.makeText(this, addedCount + " photo(s) added", Toast.LENGTH_SHORT).show();
-            } else {
-                 Toast.makeText(this, "Could not add photo(s)", Toast.LENGTH_SHORT).show();
+        importTask = ImportPipeline.start(this, album.getName(), imageUris, new ImportPipeline.Listener() {
+            @Override
+            public void onProgress(int completed, int total) {
+                progress.setMessage(completed + " of " + total);
             }
-        } else if (requestCode == PHOTO_REQUEST_CODE && resultCode == RESULT_OK) {
-            album = DataStore.findAlbumByName(album.getName());
-            if (album != null) {
-                photoAdapter.updatePhotos(album.getPhotos());
-                updateEmptyState();
+
+            @Override
+            public void onFinished(BatchResult<Uri> result) {
+                importTask = null;
+                if (!isDestroyed() && progress.isShowing()) progress.dismiss();
+                if (isFinishing() || isDestroyed()) return;
+                int addedCount = result.getSuccessCount();
+                // UNCHANGED means the album already had that image; it is not an error.
+                int duplicateCount = result.getCount(BatchResult.Status.UNCHANGED);
+                int failedCount = result.getFailureCount() - duplicateCount;
+                List<String> parts = new ArrayList<>();
+                if (addedCount > 0) {
+                    setResult(RESULT_OK);
+                    parts.add(addedCount + " photo(s) added");
+                }
+                if (duplicateCount > 0) parts.add(duplicateCount + " already in album");
+                if (failedCount > 0) parts.add(failedCount + " could not be added");
+                if (!parts.isEmpty()) {
+                    Toast.makeText(AlbumActivity.this, String.join(", ", parts), Toast.LENGTH_SHORT).show();
+                }
             }
+        });
+    }
+
+    private static List<String> photoIds(List<Photo> photos) {
+        List<String> ids = new ArrayList<>(photos.size());
+        for (Photo p : photos) {
+            ids.add(p.getId());
         }
+        return ids;
     }
 
     private void updateEmptyState() {
-        if (album == null || album.getPhotos().isEmpty()) {
+        if (album == null || album.getPhotoCount() == 0) {
             photoGrid.setVisibility(RecyclerView.GONE);
             emptyMessage.setVisibility(TextView.VISIBLE);
         } else {
@@ -310,6 +420,7 @@ public class AlbumActivity extends AppCompatActivity implements PhotoAdapter.OnP
     public void onPhotoClick(Photo photo) {
         Intent intent = new Intent(this, PhotoActivity.class);
         intent.putExtra("photoId", photo.getId());
+        intent.putExtra("albumName", album.getName());
         startActivityForResult(intent, PHOTO_REQUEST_CODE);
     }
 }
@@ -23,11 +23,14 @@ import android.Manifest;
 import com.example.myapplication.adapter.AlbumAdapter;
 import com.example.myapplication.model.Album;
 import com.example.myapplication.util.DataStore;
+import com.example.myapplication.util.LibraryEvent;
+import com.example.myapplication.util.LibraryEvents;
+import com.example.myapplication.util.LibrarySnapshot;
 
-import java.util.ArrayList;
 import java.util.List;
 
-public class MainActivity extends AppCompatActivity implements AlbumAdapter.OnAlbumClickListener {
+public class MainActivity extends AppCompatActivity
+        implements AlbumAdapter.OnAlbumClickListener, LibraryEvents.Listener {
 
     private static final int ALBUM_REQUEST_CODE = 1;
     private List<Album> albums;
@@ -44,14 +47,15 @@ public class MainActivity extends AppCompatActivity implements AlbumAdapter.OnAl
         // Request runtime permissions for storage access
         requestStoragePermissions();
 
-        // Load albums from centralized DataStore
-        albums = DataStore.getAlbums(this);
-        if (albums == null) albums = new ArrayList<>();
+        // Load albums from centralized DataStore; later changes arrive through LibraryEvents
+        LibrarySnapshot snapshot = DataStore.snapshot(this);
+        albums = snapshot.getAlbums();
+        LibraryEvents.register(this);
 
         // Setup RecyclerView
         albumRecyclerView = findViewById(R.id.album_list);
         emptyMessage = findViewById(R.id.empty_albums_message);
-        albumAdapter = new AlbumAdapter(this, albums, this);
+        albumAdapter = new AlbumAdapter(this, snapshot, this);
         albumRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         albumRecyclerView.setAdapter(albumAdapter);
 
@@ -68,13 +72,15 @@ public class MainActivity extends AppCompatActivity implements AlbumAdapter.OnAl
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        // Refresh albums each time activity resumes so counts reflect external changes
-        albums = DataStore.getAlbums(this);
-        if (albumAdapter != null) {
-            albumAdapter.updateAlbums(albums);
-        }
+    protected void onDestroy() {
+        super.onDestroy();
+        LibraryEvents.unregister(this);
+    }
+
+    @Override
+    public void onLibraryChanged(LibrarySnapshot snapshot, List<LibraryEvent> events) {
+        albumAdapter.onLibraryChanged(snapshot, events);
+        albums = snapshot.getAlbums();
         updateEmptyState();
     }
 
@@ -118,9 +124,6 @@ public class MainActivity extends AppCompatActivity implements AlbumAdapter.OnAl
                         Toast.makeText(MainActivity.this, "Album already exists", Toast.LENGTH_SHORT).show();
                     } else {
                         DataStore.createAlbum(MainActivity.this, albumName);
-                        albums = DataStore.getAlbums(MainActivity.this);
-                        albumAdapter.updateAlbums(albums);
-                        updateEmptyState();
                         dialog.dismiss();
                     }
                 } else {
@@ -153,8 +156,6 @@ public class MainActivity extends AppCompatActivity implements AlbumAdapter.OnAl
                     Toast.makeText(MainActivity.this, "Album already exists", Toast.LENGTH_SHORT).show();
                 } else {
                     DataStore.renameAlbum(MainActivity.this, album.getName(), newName);
-                    albums = DataStore.getAlbums(MainActivity.this);
-                    albumAdapter.updateAlbums(albums);
                     dialogRename.dismiss();
                 }
             }
@@ -171,9 +172,6 @@ public class MainActivity extends AppCompatActivity implements AlbumAdapter.OnAl
         builder.setMessage("Are you sure you want to delete \"" + album.getName() + "\"?");
         builder.setPositiveButton("Delete", (dialog, which) -> {
             DataStore.deleteAlbum(MainActivity.this, album.getName());
-            albums = DataStore.getAlbums(MainActivity.this);
-            albumAdapter.updateAlbums(albums);
-            updateEmptyState();
             Toast.makeText(MainActivity.this, "Album deleted", Toast.LENGTH_SHORT).show();
         });
         builder.setNegativeButton("Cancel", null);
@@ -207,9 +205,9 @@ public class MainActivity extends AppCompatActivity implements AlbumAdapter.OnAl
     @Override
     public void onAlbumClick(Album album) {
         Intent intent = new Intent(MainActivity.this, AlbumActivity.class);
-        intent.putExtra("album", album);
-        // Pass the full albums list so AlbumActivity can update the same instances
-        intent.putExtra("allAlbums", new java.util.ArrayList<>(albums));
+        // Only the name: AlbumActivity reads the album from the snapshot, and serializing
+        // it here would load every photo of an album that has not been loaded.
+        intent.putExtra("albumName", album.getName());
         startActivityForResult(intent, ALBUM_REQUEST_CODE);
     }
 
@@ -229,19 +227,9 @@ public class MainActivity extends AppCompatActivity implements AlbumAdapter.OnAl
     }
 
     @Override
-    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
-        super.onActivityResult(requestCode, resultCode, data);
-        if (requestCode == ALBUM_REQUEST_CODE && resultCode == RESULT_OK) {
-            // Child activity may have modified data; refresh from DataStore
-            albums = DataStore.getAlbums(this);
-            albumAdapter.updateAlbums(albums);
-            updateEmptyState();
-        }
-    }
-
-    @Override
-    protected void onPause() {
-        super.onPause();
-        // DataStore persists changes immediately; no explicit save required here.
+    protected void onStop() {
+        super.onStop();
+        // Hand queued edits to the persister thread now, without blocking the main thread.
+        DataStore.persist(this);
     }
 }
@@ -1,5 +1,6 @@
 package com.example.myapplication;
 
+import android.content.Context;
 import android.content.Intent;
 import android.graphics.BitmapFactory;
 import android.os.Bundle;
@@ -20,14 +21,17 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.myapplication.adapter.TagAdapter;
+import com.example.myapplication.adapter.TagSuggestionAdapter;
 import com.example.myapplication.model.Photo;
 import com.example.myapplication.model.Tag;
 import com.example.myapplication.model.TagType;
 import com.example.myapplication.util.DataStore;
-import com.example.myapplication.util.SearchManager;
+import com.example.myapplication.util.TagIndex;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class PhotoActivity extends AppCompatActivity implements TagAdapter.OnTagClickListener {
 
@@ -41,35 +45,59 @@ public class PhotoActivity extends AppCompatActivity implements TagAdapter.OnTag
     private RecyclerView tagsList;
     private TagAdapter tagAdapter;
     private TextView noTagsMessage;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, "PhotoLoader"));
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_photo);
 
-        photoId = getIntent().getStringExtra("photoId");
-        photo = DataStore.findPhotoById(photoId);
+        photoView = findViewById(R.id.photo_view);
+        photoFilename = findViewById(R.id.photo_filename);
+        noTagsMessage = findViewById(R.id.no_tags_message);
+        tagsList = findViewById(R.id.tags_list);
+        findViewById(R.id.back_button).setOnClickListener(v -> finish());
 
-        if (photo == null) {
+        photoId = getIntent().getStringExtra("photoId");
+        Photo found = DataStore.findPhotoById(photoId);
+        String albumName = getIntent().getStringExtra("albumName");
+        if (found != null) {
+            bindPhoto(found);
+        } else if (albumName != null) {
+            // Opened from an album browsed without loading it; editing needs its photos, and
+            // decoding a large album must not block the main thread.
+            final Context appContext = getApplicationContext();
+            loader.execute(() -> {
+                DataStore.loadAlbum(appContext, albumName);
+                Photo loaded = DataStore.findPhotoById(photoId);
+                runOnUiThread(() -> {
+                    if (isFinishing() || isDestroyed()) return;
+                    if (loaded == null) {
+                        Toast.makeText(this, "Photos of this album cannot be read", Toast.LENGTH_SHORT).show();
+                        finish();
+                    } else {
+                        bindPhoto(loaded);
+                    }
+                });
+            });
+        } else {
             finish();
-            return;
         }
+    }
 
+    /** Shows the photo and enables the controls that edit or page through its album. */
+    private void bindPhoto(Photo found) {
+        photo = found;
         photoList = getPhotosFromSameAlbum(photoId);
         photoIndex = findPhotoIndexById(photoList, photoId);
 
-        photoView = findViewById(R.id.photo_view);
-        photoFilename = findViewById(R.id.photo_filename);
-        noTagsMessage = findViewById(R.id.no_tags_message);
-        tagsList = findViewById(R.id.tags_list);
-
         tagAdapter = new TagAdapter(this, photo.getTags(), this);
         tagsList.setLayoutManager(new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL, false));
         tagsList.setAdapter(tagAdapter);
 
         updatePhotoUI();
 
-        findViewById(R.id.back_button).setOnClickListener(v -> finish());
         findViewById(R.id.prev_button).setOnClickListener(v -> previousPhoto());
         findViewById(R.id.next_button).setOnClickListener(v -> nextPhoto());
         findViewById(R.id.add_tag_button).setOnClickListener(v -> showAddTagDialog());
@@ -77,10 +105,29 @@ public class PhotoActivity extends AppCompatActivity implements TagAdapter.OnTag
         findViewById(R.id.rename_button).setOnClickListener(v -> showRenameDialog());
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        DataStore.persist(this);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        loader.shutdownNow();
+    }
+
     private void updatePhotoUI() {
         if (photo == null) return;
 
         photoView.setImageBitmap(BitmapFactory.decodeFile(photo.getImagePath()));
+        updateDetailsUI();
+    }
+
+    /** Refreshes the filename and tags only; the image itself does not change on those edits. */
+    private void updateDetailsUI() {
+        if (photo == null) return;
+
         photoFilename.setText(photo.getFilename());
         tagAdapter.updateTags(photo.getTags());
         noTagsMessage.setVisibility(photo.getTags().isEmpty() ? View.VISIBLE : View.GONE);
@@ -117,8 +164,18 @@ public class PhotoActivity extends AppCompatActivity implements TagAdapter.OnTag
 
         tagTypeSpinner.setAdapter(new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, new String[]{"Person", "Location"}));
 
-        List<String> suggestions = SearchManager.getTagValueSuggestions(DataStore.getAlbums(this), TagType.PERSON);
-        tagValueInput.setAdapter(new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, suggestions));
+        tagTypeSpinner.setOnItemSelectedListener(new android.widget.AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(android.widget.AdapterView<?> parent, View view, int position, long id) {
+                TagSuggestionAdapter suggestions = (TagSuggestionAdapter) tagValueInput.getAdapter();
+                if (suggestions != null) {
+                    suggestions.setTagType(TagType.fromString(parent.getItemAtPosition(position).toString()));
+                }
+            }
+
+            @Override
+            public void onNothingSelected(android.widget.AdapterView<?> parent) {}
+        });
 
         AlertDialog dialog = new AlertDialog.Builder(this)
                 .setTitle("Add Tag")
@@ -132,7 +189,7 @@ public class PhotoActivity extends AppCompatActivity implements TagAdapter.OnTag
                 Tag newTag = new Tag(TagType.fromString(tagTypeStr), tagValue);
                 if (DataStore.addTag(this, photoId, newTag)) {
                     photo = DataStore.findPhotoById(photoId);
-                    updatePhotoUI();
+                    updateDetailsUI();
                     setResult(RESULT_OK);
                     Toast.makeText(this, "Tag added", Toast.LENGTH_SHORT).show();
                 }
@@ -143,6 +200,19 @@ public class PhotoActivity extends AppCompatActivity implements TagAdapter.OnTag
         cancelButton.setOnClickListener(v -> dialog.dismiss());
 
         dialog.show();
+
+        // The first call loads every album; suggestions are offered once the index is ready.
+        tagValueInput.setEnabled(false);
+        final Context appContext = getApplicationContext();
+        loader.execute(() -> {
+            TagIndex index = DataStore.getTagIndex(appContext);
+            runOnUiThread(() -> {
+                if (isDestroyed() || !dialog.isShowing()) return;
+                TagType type = TagType.fromString(tagTypeSpinner.getSelectedItem().toString());
+                tagValueInput.setAdapter(new TagSuggestionAdapter(this, index, type));
+                tagValueInput.setEnabled(true);
+            });
+        });
     }
 
     private void showDeleteTagDialog(Tag preselect) {
@@ -180,7 +250,7 @@ public class PhotoActivity extends AppCompatActivity implements TagAdapter.OnTag
                         DataStore.removeTag(this, photoId, t);
                     }
                     photo = DataStore.findPhotoById(photoId);
-                    updatePhotoUI();
+                    updateDetailsUI();
                     setResult(RESULT_OK);
                     Toast.makeText(this, tagsToDelete.size() + " tag(s) deleted", Toast.LENGTH_SHORT).show();
                 })
@@ -200,8 +270,8 @@ public class PhotoActivity extends AppCompatActivity implements TagAdapter.OnTag
                     String newName = input.getText().toString().trim();
                     if (!newName.isEmpty()) {
                         if (DataStore.renamePhotoById(this, photoId, newName)) {
-                            photo.setFilename(newName);
-                            updatePhotoUI();
+                            photo = DataStore.findPhotoById(photoId);
+                            updateDetailsUI();
                             setResult(RESULT_OK);
                             Toast.makeText(this, "Image renamed", Toast.LENGTH_SHORT).show();
                         } else {
@@ -214,14 +284,8 @@ public class PhotoActivity extends AppCompatActivity implements TagAdapter.OnTag
     }
 
     private List<Photo> getPhotosFromSameAlbum(String photoId) {
-        for (com.example.myapplication.model.Album a : DataStore.getAlbums(this)) {
-            for (Photo p : a.getPhotos()) {
-                if (p.getId().equals(photoId)) {
-                    return a.getPhotos();
-                }
-            }
-        }
-        return new ArrayList<>();
+        com.example.myapplication.model.Album a = DataStore.findAlbumOfPhoto(photoId);
+        return a == null ? new ArrayList<>() : a.getPhotos();
     }
 
     private int findPhotoIndexById(List<Photo> photos, String photoId) {
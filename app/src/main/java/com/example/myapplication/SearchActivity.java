@@ -1,11 +1,15 @@
 package com.example.myapplication;
 
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.AutoCompleteTextView;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -15,34 +19,38 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.myapplication.adapter.PhotoAdapter;
-import com.example.myapplication.model.Album;
+import com.example.myapplication.adapter.TagSuggestionAdapter;
 import com.example.myapplication.model.Photo;
 import com.example.myapplication.model.TagType;
 import com.example.myapplication.util.DataStore;
-import com.example.myapplication.util.SearchManager;
+import com.example.myapplication.util.LiveSearch;
+import com.example.myapplication.util.TagIndex;
+import com.example.myapplication.util.TagQuery;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class SearchActivity extends AppCompatActivity implements PhotoAdapter.OnPhotoClickListener {
 
-    private List<Album> albums;
     private Spinner tagType1Spinner, tagType2Spinner, operatorSpinner;
     private AutoCompleteTextView tagValue1Input, tagValue2Input;
+    private EditText queryInput;
+    private TagSuggestionAdapter tagValue1Adapter, tagValue2Adapter;
     private RecyclerView resultsGrid;
     private PhotoAdapter resultsAdapter;
     private TextView noResultsMessage;
     private TextView resultsTitle;
+    private Button searchButton;
     private List<Photo> searchResults;
+    // Both null until the tag index is ready; getting it loads every album.
+    private TagIndex tagIndex;
+    private LiveSearch liveSearch;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_search);
 
-        albums = DataStore.getAlbums(this);
-        if (albums == null) albums = new ArrayList<>();
-
         searchResults = new ArrayList<>();
 
         tagType1Spinner = findViewById(R.id.tag_type_spinner);
@@ -55,8 +63,7 @@ public class SearchActivity extends AppCompatActivity implements PhotoAdapter.On
 
         tagValue1Input = findViewById(R.id.tag_value_input);
         tagValue2Input = findViewById(R.id.tag_value_input2);
-
-        updateAutocompleteSuggestions();
+        queryInput = findViewById(R.id.query_input);
 
         resultsGrid = findViewById(R.id.search_results_grid);
         noResultsMessage = findViewById(R.id.no_results_message);
@@ -66,12 +73,39 @@ public class SearchActivity extends AppCompatActivity implements PhotoAdapter.On
         resultsGrid.setAdapter(resultsAdapter);
 
         findViewById(R.id.back_button).setOnClickListener(v -> finish());
-        findViewById(R.id.search_button).setOnClickListener(v -> performSearch());
+        searchButton = findViewById(R.id.search_button);
+        searchButton.setOnClickListener(v -> performSearch());
+
+        setInputEnabled(false);
+        final Context appContext = getApplicationContext();
+        new Thread(() -> {
+            TagIndex index = DataStore.getTagIndex(appContext);
+            runOnUiThread(() -> {
+                if (!isDestroyed()) onTagIndexReady(index);
+            });
+        }, "TagIndexLoader").start();
+
+        TextWatcher liveWatcher = new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                submitLiveSearch();
+            }
+        };
+        queryInput.addTextChangedListener(liveWatcher);
+        tagValue1Input.addTextChangedListener(liveWatcher);
+        tagValue2Input.addTextChangedListener(liveWatcher);
 
         tagType1Spinner.setOnItemSelectedListener(new android.widget.AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(android.widget.AdapterView<?> parent, View view, int position, long id) {
                 updateTagValue1Suggestions();
+                submitLiveSearch();
             }
 
             @Override
@@ -82,11 +116,57 @@ public class SearchActivity extends AppCompatActivity implements PhotoAdapter.On
             @Override
             public void onItemSelected(android.widget.AdapterView<?> parent, View view, int position, long id) {
                 updateTagValue2Suggestions();
+                submitLiveSearch();
             }
 
             @Override
             public void onNothingSelected(android.widget.AdapterView<?> parent) {}
         });
+
+        operatorSpinner.setOnItemSelectedListener(new android.widget.AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(android.widget.AdapterView<?> parent, View view, int position, long id) {
+                submitLiveSearch();
+            }
+
+            @Override
+            public void onNothingSelected(android.widget.AdapterView<?> parent) {}
+        });
+    }
+
+    /** Starts searching and suggesting once the index is loaded, and lets the user type. */
+    private void onTagIndexReady(TagIndex index) {
+        tagIndex = index;
+        liveSearch = new LiveSearch(index, new LiveSearch.Listener() {
+            @Override
+            public void onResults(List<Photo> photos, List<LiveSearch.Change> changes) {
+                queryInput.setError(null);
+                searchResults = photos;
+                resultsAdapter.applyChanges(photos, changes);
+                updateResultsDisplay();
+            }
+
+            @Override
+            public void onError(String message) {
+                queryInput.setError(message);
+            }
+        });
+        updateAutocompleteSuggestions();
+        setInputEnabled(true);
+        submitLiveSearch();
+    }
+
+    private void setInputEnabled(boolean enabled) {
+        queryInput.setEnabled(enabled);
+        tagValue1Input.setEnabled(enabled);
+        tagValue2Input.setEnabled(enabled);
+        searchButton.setEnabled(enabled);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (liveSearch != null) liveSearch.shutdown();
     }
 
     private void setupSpinner(Spinner spinner, String[] items) {
@@ -102,19 +182,25 @@ public class SearchActivity extends AppCompatActivity implements PhotoAdapter.On
     }
 
     private void updateTagValue1Suggestions() {
+        if (tagIndex == null) return;
         TagType type = getSelectedTagType(tagType1Spinner);
-        List<String> suggestions = SearchManager.getTagValueSuggestions(albums, type);
-        ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
-                android.R.layout.simple_dropdown_item_1line, suggestions);
-        tagValue1Input.setAdapter(adapter);
+        if (tagValue1Adapter == null) {
+            tagValue1Adapter = new TagSuggestionAdapter(this, tagIndex, type);
+            tagValue1Input.setAdapter(tagValue1Adapter);
+        } else {
+            tagValue1Adapter.setTagType(type);
+        }
     }
 
     private void updateTagValue2Suggestions() {
+        if (tagIndex == null) return;
         TagType type = getSelectedTagType(tagType2Spinner);
-        List<String> suggestions = SearchManager.getTagValueSuggestions(albums, type);
-        ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
-                android.R.layout.simple_dropdown_item_1line, suggestions);
-        tagValue2Input.setAdapter(adapter);
+        if (tagValue2Adapter == null) {
+            tagValue2Adapter = new TagSuggestionAdapter(this, tagIndex, type);
+            tagValue2Input.setAdapter(tagValue2Adapter);
+        } else {
+            tagValue2Adapter.setTagType(type);
+        }
     }
 
     private TagType getSelectedTagType(Spinner spinner) {
@@ -122,33 +208,59 @@ public class SearchActivity extends AppCompatActivity implements PhotoAdapter.On
         return TagType.fromString(selected);
     }
 
-    private void performSearch() {
-        String tagValue1 = tagValue1Input.getText().toString().trim();
-        if (tagValue1.isEmpty()) {
-            Toast.makeText(this, "Enter at least one tag value", Toast.LENGTH_SHORT).show();
-            return;
+    /** Searches as the user types; the query box takes precedence over the tag fields. */
+    private void submitLiveSearch() {
+        if (liveSearch == null) return;
+        String queryText = queryInput.getText().toString().trim();
+        if (!queryText.isEmpty()) {
+            liveSearch.submit(queryText);
+        } else {
+            queryInput.setError(null);
+            liveSearch.submit(buildFieldQuery());
         }
+    }
 
-        TagType type1 = getSelectedTagType(tagType1Spinner);
+    /** The query described by the tag fields, or null if the first value is empty. */
+    private TagQuery buildFieldQuery() {
+        String tagValue1 = tagValue1Input.getText().toString().trim();
+        if (tagValue1.isEmpty()) return null;
+        TagQuery t1 = TagQuery.term(getSelectedTagType(tagType1Spinner), tagValue1, true);
         String tagValue2 = tagValue2Input.getText().toString().trim();
+        if (tagValue2.isEmpty()) return t1;
+        TagQuery t2 = TagQuery.term(getSelectedTagType(tagType2Spinner), tagValue2, true);
+        return operatorSpinner.getSelectedItem().toString().equals("AND")
+                ? TagQuery.and(t1, t2) : TagQuery.or(t1, t2);
+    }
 
-        if (tagValue2.isEmpty()) {
-            searchResults = SearchManager.searchByTag(albums, type1, tagValue1);
-        } else {
-            TagType type2 = getSelectedTagType(tagType2Spinner);
-            String operatorStr = operatorSpinner.getSelectedItem().toString();
-            SearchManager.SearchOperator operator = operatorStr.equals("AND") ?
-                    SearchManager.SearchOperator.AND : SearchManager.SearchOperator.OR;
-
-            searchResults = SearchManager.searchByTags(albums, type1, tagValue1, type2, tagValue2, operator);
+    /** Search button: runs the current query immediately through the same live pipeline. */
+    private void performSearch() {
+        if (liveSearch == null) return;
+        String queryText = queryInput.getText().toString().trim();
+        if (!queryText.isEmpty()) {
+            try {
+                liveSearch.run(TagQuery.parse(queryText));
+            } catch (IllegalArgumentException e) {
+                Toast.makeText(this, "Invalid query: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            }
+            return;
         }
 
-        resultsAdapter.updatePhotos(searchResults);
-        updateResultsDisplay();
+        TagQuery query = buildFieldQuery();
+        if (query == null) {
+            Toast.makeText(this, "Enter at least one tag value", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        liveSearch.run(query);
     }
 
     private void updateResultsDisplay() {
-        if (searchResults.isEmpty()) {
+        boolean noQuery = queryInput.getText().toString().trim().isEmpty()
+                && tagValue1Input.getText().toString().trim().isEmpty();
+        if (searchResults.isEmpty() && noQuery) {
+            resultsGrid.setVisibility(RecyclerView.GONE);
+            noResultsMessage.setVisibility(TextView.GONE);
+            resultsTitle.setVisibility(TextView.GONE);
+        } else if (searchResults.isEmpty()) {
             resultsGrid.setVisibility(RecyclerView.GONE);
             noResultsMessage.setVisibility(TextView.VISIBLE);
             resultsTitle.setVisibility(TextView.GONE);
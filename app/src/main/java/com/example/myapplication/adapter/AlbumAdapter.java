@@ -1,8 +1,6 @@
 package com.example.myapplication.adapter;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,29 +8,62 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.myapplication.R;
 import com.example.myapplication.model.Album;
 import com.example.myapplication.model.Photo;
+import com.example.myapplication.util.LibraryEvent;
+import com.example.myapplication.util.LibraryEvents;
+import com.example.myapplication.util.LibrarySnapshot;
+import com.example.myapplication.util.ThumbnailLoader;
 
 import java.util.List;
 
-public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHolder> {
+/**
+ * AlbumAdapter: album list for MainActivity. Follows LibraryEvents batches with item-range
+ * notifications, so only the rows of albums that changed are rebound.
+ */
+public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHolder>
+        implements LibraryEvents.Listener {
+
+    // Snapshots reuse the frozen copy of every album that did not change.
+    private static final DiffUtil.ItemCallback<Album> ALBUM_DIFF = new DiffUtil.ItemCallback<Album>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Album a, @NonNull Album b) {
+            return a.getName().equalsIgnoreCase(b.getName());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Album a, @NonNull Album b) {
+            return a == b;
+        }
+    };
 
     private List<Album> albums;
+    private long version;
+    private int diffGeneration = 0;
+    private boolean diffing = false;
     private Context context;
     private OnAlbumClickListener listener;
+    private final int thumbnailWidth;
+    private final int thumbnailHeight;
 
     public interface OnAlbumClickListener {
         void onAlbumClick(Album album);
         void onAlbumLongClick(Album album);
     }
 
-    public AlbumAdapter(Context context, List<Album> albums, OnAlbumClickListener listener) {
+    public AlbumAdapter(Context context, LibrarySnapshot snapshot, OnAlbumClickListener listener) {
         this.context = context;
-        this.albums = albums;
+        this.albums = snapshot.getAlbums();
+        this.version = snapshot.getVersion();
         this.listener = listener;
+        // Album rows span the screen width and are 100dp tall (see item_album.xml)
+        android.util.DisplayMetrics dm = context.getResources().getDisplayMetrics();
+        this.thumbnailWidth = dm.widthPixels;
+        this.thumbnailHeight = (int) (100 * dm.density);
     }
 
     @NonNull
@@ -48,28 +79,10 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
         holder.albumName.setText(album.getName());
         holder.photoCount.setText(album.getPhotoCount() + " photos");
 
-        // Choose a random photo as the album thumbnail when photos exist
-        if (album.getPhotoCount() > 0) {
-            try {
-                int idx = new java.util.Random().nextInt(album.getPhotoCount());
-                Photo p = album.getPhotos().get(idx);
-                String path = p.getImagePath();
-                if (path != null) {
-                    Bitmap bmp = BitmapFactory.decodeFile(path);
-                    if (bmp != null) {
-                        holder.thumbnail.setImageBitmap(bmp);
-                    } else {
-                        holder.thumbnail.setImageResource(R.drawable.ic_photo_placeholder);
-                    }
-                } else {
-                    holder.thumbnail.setImageResource(R.drawable.ic_photo_placeholder);
-                }
-            } catch (Exception e) {
-                holder.thumbnail.setImageResource(R.drawable.ic_photo_placeholder);
-            }
-        } else {
-            holder.thumbnail.setImageResource(R.drawable.ic_photo_placeholder);
-        }
+        // Stable cover (pinned or first photo) so the cached thumbnail is reused across binds
+        Photo cover = album.getCoverPhoto();
+        ThumbnailLoader.load(holder.thumbnail, cover, thumbnailWidth, thumbnailHeight,
+                R.drawable.ic_photo_placeholder);
 
         holder.itemView.setOnClickListener(v -> {
             if (listener != null) {
@@ -85,14 +98,63 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
         });
     }
 
+    @Override
+    public void onViewRecycled(@NonNull AlbumViewHolder holder) {
+        super.onViewRecycled(holder);
+        ThumbnailLoader.cancel(holder.thumbnail);
+    }
+
     @Override
     public int getItemCount() {
         return albums.size();
     }
 
-    public void updateAlbums(List<Album> newAlbums) {
-        this.albums = newAlbums;
-        notifyDataSetChanged();
+    @Override
+    public void onLibraryChanged(LibrarySnapshot snapshot, List<LibraryEvent> events) {
+        if (snapshot.getVersion() <= version) return;
+        if (snapshot.getVersion() != version + 1 || diffing) {
+            diffTo(snapshot);
+            return;
+        }
+        version = snapshot.getVersion();
+        albums = snapshot.getAlbums();
+        for (LibraryEvent e : events) {
+            switch (e.type) {
+                case ALBUM_ADDED:
+                    notifyItemInserted(e.albumPosition);
+                    break;
+                case ALBUM_REMOVED:
+                    notifyItemRemoved(e.albumPosition);
+                    break;
+                case PHOTOS_MOVED:
+                    notifyItemChanged(e.albumPosition);
+                    notifyItemChanged(e.toAlbumPosition);
+                    break;
+                case ALBUM_RENAMED:
+                case COVER_CHANGED:
+                case PHOTOS_ADDED:
+                case PHOTOS_REMOVED:
+                    notifyItemChanged(e.albumPosition);
+                    break;
+                default:
+                    // Photo renames and tags do not show in the album list.
+                    break;
+            }
+        }
+    }
+
+    /** Catches up with a full diff computed off the main thread; a newer call supersedes it. */
+    private void diffTo(LibrarySnapshot snapshot) {
+        final List<Album> target = snapshot.getAlbums();
+        final int generation = ++diffGeneration;
+        diffing = true;
+        BackgroundDiff.calculate(albums, target, ALBUM_DIFF, result -> {
+            if (generation != diffGeneration) return;
+            diffing = false;
+            albums = target;
+            version = snapshot.getVersion();
+            result.dispatchUpdatesTo(this);
+        });
     }
 
     static class AlbumViewHolder extends RecyclerView.ViewHolder {
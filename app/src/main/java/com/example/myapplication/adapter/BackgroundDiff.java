@@ -0,0 +1,55 @@
+package com.example.myapplication.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * BackgroundDiff: runs DiffUtil on a worker thread and hands the result back on the main
+ * thread, for the cases where an adapter has no events to apply and needs a full diff.
+ * Both lists must not change while the diff runs; snapshot lists never do.
+ */
+final class BackgroundDiff {
+
+    interface Callback {
+        void onDiff(DiffUtil.DiffResult result);
+    }
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, "BackgroundDiff"));
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private BackgroundDiff() {}
+
+    static <T> void calculate(List<T> oldList, List<T> newList, DiffUtil.ItemCallback<T> items, Callback callback) {
+        executor.execute(() -> {
+            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return oldList.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return newList.size();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                    return items.areItemsTheSame(oldList.get(oldPosition), newList.get(newPosition));
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                    return items.areContentsTheSame(oldList.get(oldPosition), newList.get(newPosition));
+                }
+            });
+            mainHandler.post(() -> callback.onDiff(result));
+        });
+    }
+}
@@ -1,7 +1,6 @@
 package com.example.myapplication.adapter;
 
 import android.content.Context;
-import android.graphics.BitmapFactory;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,18 +8,76 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.myapplication.R;
+import com.example.myapplication.model.Album;
 import com.example.myapplication.model.Photo;
+import com.example.myapplication.util.LibraryEvent;
+import com.example.myapplication.util.LibraryEvents;
+import com.example.myapplication.util.LibrarySnapshot;
+import com.example.myapplication.util.LiveSearch;
+import com.example.myapplication.util.ThumbnailLoader;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
 
-public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHolder> {
+/**
+ * PhotoAdapter: photo grid for an album or for search results. Bound to an album (see
+ * {@link #bindAlbum}) it follows LibraryEvents batches with item-range notifications, and
+ * falls back to a DiffUtil run off the main thread when it has missed a version. An album
+ * that is not loaded is read through a {@link PhotoPager}; rows whose page is still loading
+ * show a placeholder, so report scrolling with {@link #setVisibleRange}.
+ */
+public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHolder>
+        implements LibraryEvents.Listener {
+
+    /**
+     * Photo objects are shared between snapshot versions and renamed in place, so the old and
+     * new item are often the same object; {@code stale} lists the photos whose row shows a
+     * filename they no longer have.
+     */
+    private static DiffUtil.ItemCallback<Photo> photoDiff(Set<Photo> stale) {
+        return new DiffUtil.ItemCallback<Photo>() {
+            @Override
+            public boolean areItemsTheSame(@NonNull Photo a, @NonNull Photo b) {
+                return a.getId().equals(b.getId());
+            }
+
+            @Override
+            public boolean areContentsTheSame(@NonNull Photo a, @NonNull Photo b) {
+                return !stale.contains(a)
+                        && Objects.equals(a.getImagePath(), b.getImagePath())
+                        && Objects.equals(a.getFilename(), b.getFilename());
+            }
+        };
+    }
+
+    // Kinds of queued range notification in onLibraryChanged
+    private static final int INSERTED = 0;
+    private static final int REMOVED = 1;
+    private static final int CHANGED = 2;
 
     private List<Photo> photos;
+    // Album mode only; search results use photos.
+    private PhotoPager pager;
+    private String albumName;
+    private long version = -1;
+    private int diffGeneration = 0;
+    private boolean diffing = false;
     private Context context;
     private OnPhotoClickListener listener;
+    private static final int GRID_COLUMNS = 3;
+    private final int thumbnailWidth;
+    private final int thumbnailHeight;
+    // Every holder still around, to find rows showing an outdated filename before a diff.
+    private final Set<PhotoViewHolder> holders = Collections.newSetFromMap(new WeakHashMap<>());
 
     public interface OnPhotoClickListener {
         void onPhotoClick(Photo photo);
@@ -30,26 +87,39 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         this.context = context;
         this.photos = photos;
         this.listener = listener;
+        // Grid cells are a third of the screen wide and 120dp tall (see item_photo.xml)
+        android.util.DisplayMetrics dm = context.getResources().getDisplayMetrics();
+        this.thumbnailWidth = dm.widthPixels / GRID_COLUMNS;
+        this.thumbnailHeight = (int) (120 * dm.density);
     }
 
     @NonNull
     @Override
     public PhotoViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(context).inflate(R.layout.item_photo, parent, false);
-        return new PhotoViewHolder(view);
+        PhotoViewHolder holder = new PhotoViewHolder(view);
+        holders.add(holder);
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull PhotoViewHolder holder, int position) {
-        Photo photo = photos.get(position);
-
-        try {
-            holder.thumbnail.setImageBitmap(BitmapFactory.decodeFile(photo.getImagePath()));
-        } catch (Exception e) {
-            holder.thumbnail.setImageResource(android.R.drawable.ic_menu_gallery);
+        Photo photo = pager != null ? pager.get(position) : photos.get(position);
+        holder.photo = photo;
+        holder.shownFilename = photo == null ? null : photo.getFilename();
+        if (photo == null) {
+            // Page still loading; onRangeLoaded rebinds this row.
+            ThumbnailLoader.cancel(holder.thumbnail);
+            holder.thumbnail.setImageResource(R.drawable.ic_photo_placeholder);
+            holder.filename.setText("");
+            holder.itemView.setOnClickListener(null);
+            return;
         }
 
-        holder.filename.setText(photo.getFilename());
+        ThumbnailLoader.load(holder.thumbnail, photo, thumbnailWidth, thumbnailHeight,
+                R.drawable.ic_photo_placeholder);
+
+        holder.filename.setText(holder.shownFilename);
 
         holder.itemView.setOnClickListener(v -> {
             if (listener != null) {
@@ -58,9 +128,16 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         });
     }
 
+    @Override
+    public void onViewRecycled(@NonNull PhotoViewHolder holder) {
+        super.onViewRecycled(holder);
+        holder.photo = null;
+        ThumbnailLoader.cancel(holder.thumbnail);
+    }
+
     @Override
     public int getItemCount() {
-        return photos.size();
+        return pager != null ? pager.size() : photos.size();
     }
 
     public void updatePhotos(List<Photo> newPhotos) {
@@ -68,9 +145,154 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         notifyDataSetChanged();
     }
 
+    /** Shows the album as of {@code snapshot}; pass later batches to {@link #onLibraryChanged}. */
+    public void bindAlbum(LibrarySnapshot snapshot, String albumName) {
+        this.albumName = albumName;
+        this.version = snapshot.getVersion();
+        diffGeneration++;
+        diffing = false;
+        if (pager == null) pager = new PhotoPager(this::onRangeLoaded);
+        pager.setAlbum(snapshot.findAlbum(albumName));
+        notifyDataSetChanged();
+    }
+
+    /** Positions currently on screen, so an unloaded album's pages load around them. */
+    public void setVisibleRange(int first, int last) {
+        if (pager != null) pager.setVisibleRange(first, last);
+    }
+
+    private void onRangeLoaded(int from, int to) {
+        notifyItemRangeChanged(from, to - from);
+    }
+
+    /** Name of the bound album, following renames; null if it was deleted or none is bound. */
+    public String getAlbumName() {
+        return albumName;
+    }
+
+    @Override
+    public void onLibraryChanged(LibrarySnapshot snapshot, List<LibraryEvent> events) {
+        if (albumName == null || snapshot.getVersion() <= version) return;
+        if (snapshot.getVersion() != version + 1 || diffing) {
+            diffTo(snapshot);
+            return;
+        }
+        version = snapshot.getVersion();
+        // Collect the notifications first: the list must already be the new one when they are sent.
+        List<int[]> ranges = new ArrayList<>();
+        String name = albumName;
+        for (LibraryEvent e : events) {
+            switch (e.type) {
+                case ALBUM_RENAMED:
+                    if (e.isFor(name)) name = e.toAlbum;
+                    break;
+                case ALBUM_REMOVED:
+                    if (e.isFor(name)) name = null;
+                    break;
+                case PHOTOS_ADDED:
+                    if (e.isFor(name)) ranges.add(new int[]{INSERTED, e.position, e.count});
+                    break;
+                case PHOTOS_REMOVED:
+                    if (e.isFor(name)) ranges.add(new int[]{REMOVED, e.position, e.count});
+                    break;
+                case PHOTOS_MOVED:
+                    if (e.isFor(name)) ranges.add(new int[]{REMOVED, e.position, e.count});
+                    if (e.isInto(name)) ranges.add(new int[]{INSERTED, e.toPosition, e.count});
+                    break;
+                case PHOTO_RENAMED:
+                    if (e.isFor(name)) ranges.add(new int[]{CHANGED, e.position, 1});
+                    break;
+                default:
+                    // Tags and covers are not shown in the grid.
+                    break;
+            }
+            if (name == null) break;
+        }
+        albumName = name;
+        if (name == null) {
+            int removed = pager.size();
+            pager.setAlbum(null);
+            notifyItemRangeRemoved(0, removed);
+            return;
+        }
+        boolean wasPaged = !pager.isLoaded();
+        pager.setAlbum(snapshot.findAlbum(name));
+        if (wasPaged && pager.isLoaded()) {
+            // Loaded by this batch: the rows now stand for other Photo objects, so rebind them all.
+            notifyDataSetChanged();
+            return;
+        }
+        for (int[] r : ranges) {
+            if (r[0] == INSERTED) notifyItemRangeInserted(r[1], r[2]);
+            else if (r[0] == REMOVED) notifyItemRangeRemoved(r[1], r[2]);
+            else notifyItemRangeChanged(r[1], r[2]);
+        }
+    }
+
+    /**
+     * Catches up with a full diff computed off the main thread; a newer call supersedes it.
+     * If either side is not loaded there is nothing cheap to diff, so it rebinds instead.
+     */
+    private void diffTo(LibrarySnapshot snapshot) {
+        Album album = snapshot.findAlbum(albumName);
+        if (album == null && pager.isLoaded() && pager.size() > 0) {
+            // Renamed while we were not following: find it through a photo it held.
+            album = snapshot.findAlbumOf(pager.get(0).getId());
+        }
+        final Album targetAlbum = album;
+        final String targetName = album == null ? albumName : album.getName();
+        final int generation = ++diffGeneration;
+        // Follow a rename right away: the activity looks the album up by this name as soon as
+        // the batch is handed over, before the diff below is done.
+        albumName = targetName;
+        version = snapshot.getVersion();
+        if (!pager.isLoaded() || (album != null && !album.isLoaded())) {
+            diffing = false;
+            pager.setAlbum(album);
+            notifyDataSetChanged();
+            return;
+        }
+        final List<Photo> target = album == null ? Collections.emptyList() : album.getPhotos();
+        diffing = true;
+        Set<Photo> stale = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (PhotoViewHolder holder : holders) {
+            if (holder.photo != null && !Objects.equals(holder.shownFilename, holder.photo.getFilename())) {
+                stale.add(holder.photo);
+            }
+        }
+        BackgroundDiff.calculate(pager.getPhotos(), target, photoDiff(stale), result -> {
+            if (generation != diffGeneration) return;
+            diffing = false;
+            pager.setAlbum(targetAlbum);
+            result.dispatchUpdatesTo(this);
+        });
+    }
+
+    /**
+     * Swaps in {@code newPhotos} and notifies only the given ranges, which must turn the
+     * current list into the new one. Falls back to a full rebind when changes is null.
+     */
+    public void applyChanges(List<Photo> newPhotos, List<LiveSearch.Change> changes) {
+        if (changes == null) {
+            updatePhotos(newPhotos);
+            return;
+        }
+        this.photos = newPhotos;
+        for (LiveSearch.Change change : changes) {
+            if (change.insert) {
+                notifyItemRangeInserted(change.position, change.count);
+            } else {
+                notifyItemRangeRemoved(change.position, change.count);
+            }
+        }
+    }
+
     static class PhotoViewHolder extends RecyclerView.ViewHolder {
         ImageView thumbnail;
         TextView filename;
+        // What the row was last bound to, so a diff can tell whether it is out of date.
+        Photo photo;
+        String shownFilename;
 
         PhotoViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -0,0 +1,160 @@
+package com.example.myapplication.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+import com.example.myapplication.model.PhotoSource;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * PhotoPager: an album's photos for the grid, a page at a time. A loaded album is served
+ * from memory. An unloaded one is decoded on a worker thread in pages around the visible
+ * rows, and only the pages nearest them stay resident, so scrolling a huge album never
+ * holds more than a few screens of photos. Main thread only, apart from the loader.
+ */
+final class PhotoPager {
+
+    interface Listener {
+        /** Photos at [from, to) were loaded and can now be bound. */
+        void onRangeLoaded(int from, int to);
+    }
+
+    private static final String TAG = "PhotoPager";
+    // 20 rows of the three-column grid, a few screens' worth.
+    static final int PAGE_SIZE = 60;
+    private static final int MAX_RESIDENT_PAGES = 8;
+    private static final int PREFETCH_PAGES = 1;
+
+    private static final ExecutorService loader = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, "PhotoPager"));
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Listener listener;
+    private final Map<Integer, List<Photo>> pages = new HashMap<>();
+    private final Set<Integer> requested = new HashSet<>();
+    private List<Photo> photos = Collections.emptyList();
+    private PhotoSource source;
+    private int size;
+    private int generation;
+    private int firstVisible;
+    private int lastVisible;
+    // Page the user is looking at; the loader skips requests that have scrolled far out of view.
+    private volatile int centerPage;
+
+    PhotoPager(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Shows {@code album}, a snapshot copy, or nothing for null. Resident pages are kept if
+     * the album still reads from the same source, e.g. after a rename.
+     */
+    void setAlbum(Album album) {
+        PhotoSource newSource = album == null || album.isLoaded() ? null : album.getSource();
+        if (newSource == null || newSource != source) {
+            generation++;
+            pages.clear();
+            requested.clear();
+        }
+        source = newSource;
+        photos = album == null ? Collections.emptyList() : newSource == null ? album.getPhotos() : null;
+        size = newSource == null ? photos.size() : newSource.size();
+    }
+
+    /** True if every photo is in memory, so {@link #get} never misses. */
+    boolean isLoaded() {
+        return source == null;
+    }
+
+    /** All the photos; only while {@link #isLoaded()}. */
+    List<Photo> getPhotos() {
+        return photos;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** The photo at {@code position}, or null if its page is not resident; the page is then requested. */
+    Photo get(int position) {
+        if (source == null) return photos.get(position);
+        int page = position / PAGE_SIZE;
+        List<Photo> loaded = pages.get(page);
+        if (loaded == null) {
+            request(page);
+            return null;
+        }
+        return loaded.get(position - page * PAGE_SIZE);
+    }
+
+    /** Positions on screen: pages around them are prefetched and the farthest ones dropped. */
+    void setVisibleRange(int first, int last) {
+        if (source == null || first < 0 || last < first) return;
+        firstVisible = first;
+        lastVisible = Math.min(last, size - 1);
+        centerPage = (first + lastVisible) / 2 / PAGE_SIZE;
+        int lastPage = (size - 1) / PAGE_SIZE;
+        int from = Math.max(0, first / PAGE_SIZE - PREFETCH_PAGES);
+        int to = Math.min(lastPage, lastVisible / PAGE_SIZE + PREFETCH_PAGES);
+        for (int page = from; page <= to; page++) {
+            if (!pages.containsKey(page)) request(page);
+        }
+        evict();
+    }
+
+    private void request(int page) {
+        if (!requested.add(page)) return;
+        final PhotoSource s = source;
+        final int gen = generation;
+        final int from = page * PAGE_SIZE;
+        final int to = Math.min(size, from + PAGE_SIZE);
+        loader.execute(() -> {
+            List<Photo> loaded = null;
+            if (Math.abs(page - centerPage) <= MAX_RESIDENT_PAGES / 2) {
+                try {
+                    loaded = s.load(from, to);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error loading photos " + from + "-" + to, e);
+                }
+            }
+            final List<Photo> result = loaded;
+            mainHandler.post(() -> {
+                if (gen != generation) return;
+                requested.remove(page);
+                if (result == null) return;
+                pages.put(page, result);
+                evict();
+                if (pages.containsKey(page)) listener.onRangeLoaded(from, to);
+            });
+        });
+    }
+
+    /** Drops the pages farthest from the visible rows until at most MAX_RESIDENT_PAGES remain. */
+    private void evict() {
+        int firstPage = firstVisible / PAGE_SIZE;
+        int lastPage = lastVisible / PAGE_SIZE;
+        while (pages.size() > MAX_RESIDENT_PAGES) {
+            int farthest = -1;
+            int farthestDistance = -1;
+            for (int page : pages.keySet()) {
+                int distance = page < firstPage ? firstPage - page : page > lastPage ? page - lastPage : 0;
+                if (distance > farthestDistance) {
+                    farthest = page;
+                    farthestDistance = distance;
+                }
+            }
+            pages.remove(farthest);
+        }
+    }
+}
@@ -8,6 +8,7 @@ import android.widget.CheckBox;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.myapplication.R;
@@ -19,7 +20,20 @@ import java.util.Set;
 
 public class TagAdapter extends RecyclerView.Adapter<TagAdapter.TagViewHolder> {
 
+    private static final DiffUtil.ItemCallback<Tag> TAG_DIFF = new DiffUtil.ItemCallback<Tag>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Tag a, @NonNull Tag b) {
+            return a.toString().equals(b.toString());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Tag a, @NonNull Tag b) {
+            return true;
+        }
+    };
+
     private List<Tag> tags;
+    private int diffGeneration = 0;
     private Context context;
     private OnTagClickListener listener;
     private Set<Integer> selectedPositions = new HashSet<>();
@@ -59,9 +73,12 @@ public class TagAdapter extends RecyclerView.Adapter<TagAdapter.TagViewHolder> {
             holder.checkbox.setChecked(selectedPositions.contains(position));
             holder.deleteButton.setVisibility(View.GONE);
 
+            // Rows are no longer rebound on every change, so read the position at click time.
             holder.itemView.setOnClickListener(v -> {
-                toggleSelection(position);
-                holder.checkbox.setChecked(selectedPositions.contains(position));
+                int current = holder.getBindingAdapterPosition();
+                if (current == RecyclerView.NO_POSITION) return;
+                toggleSelection(current);
+                holder.checkbox.setChecked(selectedPositions.contains(current));
             });
         } else {
             holder.checkbox.setVisibility(View.GONE);
@@ -92,7 +109,7 @@ public class TagAdapter extends RecyclerView.Adapter<TagAdapter.TagViewHolder> {
         }
         this.isSelectionMode = enabled;
         this.showCheckbox = showCheckbox;
-        notifyDataSetChanged();
+        notifyItemRangeChanged(0, tags.size());
     }
 
     public void toggleSelection(int position) {
@@ -110,7 +127,7 @@ public class TagAdapter extends RecyclerView.Adapter<TagAdapter.TagViewHolder> {
     public void setSelectedPositions(Set<Integer> positions) {
         selectedPositions.clear();
         if (positions != null) selectedPositions.addAll(positions);
-        notifyDataSetChanged();
+        notifyItemRangeChanged(0, tags.size());
     }
 
     public List<Tag> getSelectedTags() {
@@ -128,9 +145,23 @@ public class TagAdapter extends RecyclerView.Adapter<TagAdapter.TagViewHolder> {
         setSelectionMode(false, false);
     }
 
+    /**
+     * Shows {@code newTags}, which must not be modified afterwards. The diff against the
+     * current list runs off the main thread; a later call supersedes one still running.
+     */
     public void updateTags(List<Tag> newTags) {
-        this.tags = newTags;
-        clearSelection();
+        final boolean hadCheckboxes = showCheckbox || !selectedPositions.isEmpty();
+        selectedPositions.clear();
+        isSelectionMode = false;
+        showCheckbox = false;
+        final int generation = ++diffGeneration;
+        BackgroundDiff.calculate(tags, newTags, TAG_DIFF, result -> {
+            if (generation != diffGeneration) return;
+            tags = newTags;
+            result.dispatchUpdatesTo(this);
+            // Rows the diff kept still show the old selection state.
+            if (hadCheckboxes) notifyItemRangeChanged(0, tags.size());
+        });
     }
 
     static class TagViewHolder extends RecyclerView.ViewHolder {
@@ -0,0 +1,70 @@
+package com.example.myapplication.adapter;
+
+import android.content.Context;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+
+import androidx.annotation.NonNull;
+
+import com.example.myapplication.model.TagType;
+import com.example.myapplication.util.SearchManager;
+import com.example.myapplication.util.TagIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Autocomplete adapter for tag values. Each keystroke asks the TagIndex for the most used
+ * values with the typed prefix; filtering runs on the Filter's worker thread.
+ */
+public class TagSuggestionAdapter extends ArrayAdapter<String> {
+
+    public static final int MAX_SUGGESTIONS = 10;
+
+    private final TagIndex index;
+    private volatile TagType tagType;
+
+    private final Filter filter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            List<String> values = constraint == null
+                    ? new ArrayList<>()
+                    : SearchManager.getAutocompleteSuggestions(index, tagType, constraint.toString(), MAX_SUGGESTIONS);
+            FilterResults results = new FilterResults();
+            results.values = values;
+            results.count = values.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            setNotifyOnChange(false);
+            clear();
+            if (results.values != null) {
+                addAll((List<String>) results.values);
+            }
+            if (results.count > 0) {
+                notifyDataSetChanged();
+            } else {
+                notifyDataSetInvalidated();
+            }
+        }
+    };
+
+    public TagSuggestionAdapter(Context context, TagIndex index, TagType tagType) {
+        super(context, android.R.layout.simple_dropdown_item_1line, new ArrayList<>());
+        this.index = index;
+        this.tagType = tagType;
+    }
+
+    public void setTagType(TagType tagType) {
+        this.tagType = tagType;
+    }
+
+    @NonNull
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+}
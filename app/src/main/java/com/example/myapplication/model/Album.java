@@ -3,17 +3,130 @@ package com.example.myapplication.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Album: a named, ordered set of photos. Not thread-safe; DataStore changes albums only
+ * under its lock and hands readers frozen copies (see {@link #Album(Album)}), which reject
+ * every change and can be shared between threads.
+ * An album loaded from storage may leave its photos in a {@link PhotoSource} until they are
+ * needed: its name, cover and photo count are known, and the photos are decoded the first
+ * time something needs them (see {@link #isLoaded()}).
+ */
 public class Album implements Serializable {
     private static final long serialVersionUID = 1L;
     
     private String name;
-    private List<Photo> photos;
+    // Insertion-ordered set for O(1) membership; the positional list and index are
+    // rebuilt lazily after a change, so repeated adds and removes stay linear overall.
+    // Null in a frozen copy, which answers everything from photoList and positions.
+    private final Set<Photo> photos;
+    private String coverPhotoId;
+    private transient volatile List<Photo> photoList;
+    private transient volatile Map<Photo, Integer> positions;
+    private transient int modCount;
+    private final transient boolean frozen;
+    // Persisted photos not decoded yet; null once they are in memory. A frozen copy keeps
+    // the source it was made with, since its contents are by definition the persisted ones.
+    private transient volatile PhotoSource source;
+    private transient volatile Photo sourceCover;
+    // The source the photos were loaded from and their fingerprint then (see getUnchangedSource).
+    private transient PhotoSource loadedFrom;
+    private transient long loadedFingerprint;
+    private transient int photoChanges;
 
     public Album(String name) {
         this.name = name;
-        this.photos = new ArrayList<>();
+        this.photos = new LinkedHashSet<>();
+        this.frozen = false;
+    }
+
+    /** An album whose photos stay in {@code source} until first needed. */
+    public Album(String name, String coverPhotoId, PhotoSource source) {
+        this(name);
+        this.coverPhotoId = coverPhotoId;
+        this.source = source;
+    }
+
+    /**
+     * Read-only copy of {@code other} as it is now. It shares {@code other}'s current photo
+     * list rather than copying it, so a copy costs at most one list build per change to the
+     * album, however many snapshots hold it. Changing the copy throws
+     * UnsupportedOperationException.
+     */
+    public Album(Album other) {
+        this.name = other.name;
+        this.coverPhotoId = other.coverPhotoId;
+        this.photos = null;
+        this.source = other.source;
+        this.sourceCover = other.sourceCover;
+        if (source == null) this.photoList = other.getPhotos();
+        this.frozen = true;
+    }
+
+    /** A frozen or unloaded album travels (e.g. in an Intent) as an ordinary album with the same contents. */
+    private Object writeReplace() {
+        if (!frozen && source == null) return this;
+        Album copy = new Album(name);
+        copy.photos.addAll(frozen ? getPhotos() : source.loadAll());
+        copy.coverPhotoId = coverPhotoId;
+        return copy;
+    }
+
+    /**
+     * True if the photos are in memory. Otherwise they are still in {@link #getSource()}, and
+     * anything that needs them as objects (getPhotos, a change, a lookup by photo) decodes
+     * them all first. Name, cover and count never need that.
+     */
+    public boolean isLoaded() {
+        return frozen ? photoList != null : source == null;
+    }
+
+    /** Where the photos are decoded from while not loaded; null once they are. */
+    public PhotoSource getSource() {
+        return source;
+    }
+
+    /**
+     * Decodes the photos into memory if they are not already. Counts as a change, so the
+     * next snapshot picks the loaded photos up. If the source is unreadable the album stays
+     * unloaded, and adding or removing photos throws IllegalStateException, so it is never
+     * saved without the photos it had.
+     */
+    public void loadPhotos() {
+        checkMutable();
+        PhotoSource s = source;
+        if (s == null || !s.isReadable()) return;
+        photos.addAll(s.loadAll());
+        source = null;
+        sourceCover = null;
+        changed();
+        loadedFrom = s;
+        loadedFingerprint = fingerprint();
+    }
+
+    /**
+     * The source holding exactly this album's photos: the one it still reads from if it is
+     * not loaded, or the one it was loaded from if since then no photo was added, removed or
+     * changed. Null otherwise. Lets a save keep the persisted copy of an unchanged album.
+     */
+    public PhotoSource getUnchangedSource() {
+        PhotoSource s = source;
+        if (s != null) return s;
+        if (frozen || loadedFrom == null || fingerprint() != loadedFingerprint) return null;
+        return loadedFrom;
+    }
+
+    /** Changes to the photo list plus every photo's own changes; grows with each change. */
+    private long fingerprint() {
+        long sum = (long) photoChanges << 32;
+        for (Photo p : photos) sum += p.getModCount();
+        return sum;
     }
 
     public String getName() {
@@ -21,41 +134,151 @@ public class Album implements Serializable {
     }
 
     public void setName(String name) {
+        checkMutable();
         this.name = name;
+        modCount++;
     }
 
+    /** Read-only list of the photos in the order they were added. Decodes them if not loaded. */
     public List<Photo> getPhotos() {
-        return photos;
+        List<Photo> list = photoList;
+        if (list == null) {
+            if (frozen) {
+                list = source.loadAll();
+            } else {
+                loadPhotos();
+                list = Collections.unmodifiableList(new ArrayList<>(photos));
+            }
+            photoList = list;
+        }
+        return list;
     }
 
     public void addPhoto(Photo photo) {
-        if (!photos.contains(photo)) {
-            photos.add(photo);
+        checkMutable();
+        loadPhotos();
+        checkLoaded();
+        if (photos.add(photo)) {
+            changed();
         }
     }
 
     public void removePhoto(Photo photo) {
-        photos.remove(photo);
+        checkMutable();
+        loadPhotos();
+        checkLoaded();
+        if (photos.remove(photo)) {
+            changed();
+        }
+        if (photo != null && photo.getId().equals(coverPhotoId)) {
+            coverPhotoId = null;
+            modCount++;
+        }
+    }
+
+    public boolean containsPhoto(Photo photo) {
+        if (frozen) return getPhotoIndex(photo) >= 0;
+        loadPhotos();
+        return photos.contains(photo);
+    }
+
+    /** True for a read-only copy made by {@link #Album(Album)}. */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkMutable() {
+        if (frozen) throw new UnsupportedOperationException("Album " + name + " is a read-only snapshot");
+    }
+
+    private void checkLoaded() {
+        if (source != null) throw new IllegalStateException("Photos of album " + name + " cannot be read");
+    }
+
+    private void changed() {
+        photoList = null;
+        positions = null;
+        modCount++;
+        photoChanges++;
+    }
+
+    /** Bumped by every change to the name, cover or photos; lets DataStore reuse unchanged copies. */
+    public int getModCount() {
+        return modCount;
+    }
+
+    /** ID of the photo the user pinned as cover, or null to use the default. */
+    public String getCoverPhotoId() {
+        return coverPhotoId;
+    }
+
+    public void setCoverPhotoId(String coverPhotoId) {
+        checkMutable();
+        this.coverPhotoId = coverPhotoId;
+        sourceCover = null;
+        modCount++;
+    }
+
+    /**
+     * The pinned cover photo if it is still in the album, otherwise the first photo.
+     * Deterministic so the cover (and its cached thumbnail) stays put across rebinds.
+     */
+    public Photo getCoverPhoto() {
+        if (getPhotoCount() == 0) return null;
+        if (!isLoaded()) return coverFromSource();
+        Iterable<Photo> all = frozen ? photoList : photos;
+        if (coverPhotoId != null) {
+            for (Photo p : all) {
+                if (coverPhotoId.equals(p.getId())) return p;
+            }
+        }
+        return all.iterator().next();
+    }
+
+    /**
+     * Decodes only the cover record, so an album list can show covers without loading
+     * albums. The photo is a separate object from the one loading the album would give.
+     */
+    private Photo coverFromSource() {
+        Photo cover = sourceCover;
+        if (cover == null) {
+            cover = source.cover(coverPhotoId);
+            sourceCover = cover;
+        }
+        return cover;
     }
 
     public Photo getPhotoAt(int index) {
-        if (index >= 0 && index < photos.size()) {
-            return photos.get(index);
+        if (index >= 0 && index < getPhotoCount()) {
+            if (!isLoaded()) return source.load(index, index + 1).get(0);
+            return getPhotos().get(index);
         }
         return null;
     }
 
     public int getPhotoCount() {
-        return photos.size();
+        if (!isLoaded()) return source.size();
+        return frozen ? photoList.size() : photos.size();
     }
 
     public int getPhotoIndex(Photo photo) {
-        return photos.indexOf(photo);
+        Map<Photo, Integer> map = positions;
+        if (map == null) {
+            List<Photo> list = getPhotos();
+            map = new IdentityHashMap<>(list.size());
+            for (int i = 0; i < list.size(); i++) {
+                map.put(list.get(i), i);
+            }
+            positions = map;
+        }
+        Integer index = map.get(photo);
+        return index == null ? -1 : index;
     }
 
     public boolean movePhotoToAlbum(Photo photo, Album targetAlbum) {
-        if (photos.contains(photo)) {
-            photos.remove(photo);
+        checkMutable();
+        if (containsPhoto(photo)) {
+            removePhoto(photo);
             targetAlbum.addPhoto(photo);
             return true;
         }
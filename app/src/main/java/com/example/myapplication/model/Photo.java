@@ -3,28 +3,40 @@ package com.example.myapplication.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Photo: an image in the library and its tags. Only DataStore changes a photo, under its
+ * lock, but photos are read from any thread: fields are volatile and the tag map is
+ * copy-on-write, so a reader always sees a complete set of tags without locking.
+ */
 public class Photo implements Serializable {
     private static final long serialVersionUID = 1L;
     
-    private String id;
+    private volatile String id;
     private String imagePath;
-    private String filename;
-    private List<Tag> tags;
+    private volatile String filename;
+    private volatile String contentHash;
+    // Insertion-ordered; maps each tag to itself so the stored instance can be looked up.
+    // Replaced, never modified, once published.
+    private volatile Map<Tag, Tag> tags = new LinkedHashMap<>();
+    private transient volatile List<Tag> tagList;
+    private transient int modCount;
 
     public Photo(String imagePath) {
         this.id = java.util.UUID.randomUUID().toString();
         this.imagePath = imagePath;
         this.filename = new java.io.File(imagePath).getName();
-        this.tags = new ArrayList<>();
     }
 
     public Photo(String imagePath, String filename) {
         this.id = java.util.UUID.randomUUID().toString();
         this.imagePath = imagePath;
         this.filename = filename;
-        this.tags = new ArrayList<>();
     }
 
     public String getId() {
@@ -33,6 +45,12 @@ public class Photo implements Serializable {
 
     public void setId(String id) {
         this.id = id;
+        modCount++;
+    }
+
+    /** Bumped by every change to the photo; lets a saved copy of it tell whether it is stale. */
+    public int getModCount() {
+        return modCount;
     }
 
     public String getImagePath() {
@@ -45,29 +63,80 @@ public class Photo implements Serializable {
 
     public void setFilename(String filename) {
         this.filename = filename;
+        modCount++;
+    }
+
+    /** Hex SHA-256 of the image bytes, or null for photos imported before hashing. */
+    public String getContentHash() {
+        return contentHash;
     }
 
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+        modCount++;
+    }
+
+    /** Read-only list of the tags in the order they were added. */
     public List<Tag> getTags() {
-        return tags;
+        List<Tag> list = tagList;
+        if (list == null) {
+            list = Collections.unmodifiableList(new ArrayList<>(tags.keySet()));
+            tagList = list;
+        }
+        return list;
     }
 
+    /** Adds the canonical instance of the tag (see {@link Tag#intern}). */
     public void addTag(Tag tag) {
-        if (!tags.contains(tag)) {
-            tags.add(tag);
+        if (!tags.containsKey(tag)) {
+            Tag canonical = Tag.intern(tag);
+            Map<Tag, Tag> next = new LinkedHashMap<>(tags);
+            next.put(canonical, canonical);
+            setTags(next);
         }
     }
 
+    /**
+     * Adds the canonical instance of each tag the photo does not have yet, copying the tag
+     * map once for all of them. Use this rather than repeated addTag when decoding a photo.
+     */
+    public void addTags(Collection<Tag> toAdd) {
+        Map<Tag, Tag> next = null;
+        for (Tag tag : toAdd) {
+            if (next == null ? tags.containsKey(tag) : next.containsKey(tag)) continue;
+            if (next == null) next = new LinkedHashMap<>(tags);
+            Tag canonical = Tag.intern(tag);
+            next.put(canonical, canonical);
+        }
+        if (next != null) setTags(next);
+    }
+
     public void removeTag(Tag tag) {
-        tags.remove(tag);
+        if (tags.containsKey(tag)) {
+            Map<Tag, Tag> next = new LinkedHashMap<>(tags);
+            next.remove(tag);
+            setTags(next);
+        }
+    }
+
+    private void setTags(Map<Tag, Tag> next) {
+        tags = next;
+        tagList = Collections.unmodifiableList(new ArrayList<>(next.keySet()));
+        modCount++;
     }
 
     public boolean hasTag(Tag tag) {
-        return tags.contains(tag);
+        return tags.containsKey(tag);
+    }
+
+    /** The tag on this photo equal to {@code tag} (same type, value ignoring case), or null. */
+    public Tag findTag(Tag tag) {
+        return tag == null ? null : tags.get(tag);
     }
 
     public List<Tag> getTagsByType(TagType type) {
         List<Tag> result = new ArrayList<>();
-        for (Tag tag : tags) {
+        for (Tag tag : tags.keySet()) {
             if (tag.getTagType() == type) {
                 result.add(tag);
             }
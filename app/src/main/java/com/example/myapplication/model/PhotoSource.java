@@ -0,0 +1,44 @@
+package com.example.myapplication.model;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * PhotoSource: an album's photos as persisted, decoded on demand instead of held in memory.
+ * Implementations are immutable and safe to call from any thread. Photos decoded by
+ * {@link #load} are fresh objects each call unless {@link #loadAll} has already run, after
+ * which every call returns the same instances.
+ */
+public interface PhotoSource {
+
+    int size();
+
+    /** Decodes the photos at positions [from, to). */
+    List<Photo> load(int from, int to);
+
+    /** Decodes every photo once and keeps them; later calls return the same list. */
+    List<Photo> loadAll();
+
+    /**
+     * Calls {@code action} with the image path and content hash of each photo, in order.
+     * Reads only those two fields and does not decode photos or their tags.
+     */
+    void forEachImage(BiConsumer<String, String> action);
+
+    /** Position of the photo with this ID, or -1. Does not decode photos. */
+    int indexOf(String photoId);
+
+    /**
+     * The photo an album with this cover ID shows as its cover: the one with that ID, or the
+     * first if there is none. Decodes at most that photo, and may return a copy without tags
+     * that is only meant for display.
+     */
+    Photo cover(String coverPhotoId);
+
+    /**
+     * False if the photos turned out to be unreadable, e.g. their file is damaged. Such a
+     * source still reports its size and cover, loads no photos, and fails on {@link #load}.
+     * May read the file to find out.
+     */
+    boolean isReadable();
+}
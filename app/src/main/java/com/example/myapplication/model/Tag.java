@@ -2,21 +2,126 @@
 package com.example.myapplication.model;
 
 import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 
+/**
+ * Tag: a (type, value) label, equal to another tag of the same type whose value matches
+ * ignoring case. Photos hold canonical instances from {@link #intern}, one per type and
+ * exact spelling, so a library that repeats the same people and places across many photos
+ * keeps one Tag (and one value String) per spelling, and two stored tags with the same
+ * spelling are the same instance. Equal tags spelled differently ("Bob", "bob") are separate
+ * instances and compare by type and case-folded value. The dictionary holds its tags
+ * weakly: a spelling no photo or screen uses any more, e.g. after its album was deleted, is
+ * dropped without affecting the other spellings of the same tag.
+ */
 public class Tag implements Serializable {
     private static final long serialVersionUID = 1L;
-    
-    private TagType tagType;
-    private String tagValue;
+
+    // One entry per (type, exact spelling); entries whose tag was collected are expunged.
+    private static final Map<Spelling, Canonical> dictionary = new HashMap<>();
+    private static final ReferenceQueue<Tag> collected = new ReferenceQueue<>();
+
+    /** Dictionary key: a tag type and its value exactly as spelled. */
+    private static final class Spelling {
+        final TagType type;
+        final String value;
+
+        Spelling(TagType type, String value) {
+            this.type = type;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Spelling)) return false;
+            Spelling other = (Spelling) obj;
+            return type == other.type && Objects.equals(value, other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(type) + Objects.hashCode(value);
+        }
+    }
+
+    /** Weak reference to a canonical tag that remembers its key for expunging. */
+    private static final class Canonical extends WeakReference<Tag> {
+        final Spelling spelling;
+
+        Canonical(Tag tag, Spelling spelling) {
+            super(tag, collected);
+            this.spelling = spelling;
+        }
+    }
+
+    private final TagType tagType;
+    private final String tagValue;
+    // Case-folded value and hash, computed once: tags are hashed on every set lookup.
+    private final String normalizedValue;
+    private final int hash;
 
     public Tag(TagType tagType, String tagValue) {
         this.tagType = tagType;
         this.tagValue = tagValue;
+        this.normalizedValue = tagValue == null ? "" : tagValue.toLowerCase(Locale.ROOT);
+        this.hash = 31 * (tagType == null ? -1 : tagType.ordinal()) + normalizedValue.hashCode();
     }
 
     public Tag(String tagTypeStr, String tagValue) {
-        this.tagType = TagType.fromString(tagTypeStr);
-        this.tagValue = tagValue;
+        this(TagType.fromString(tagTypeStr), tagValue);
+    }
+
+    /**
+     * The canonical instance of {@code tag}'s type and exact spelling, so a tag keeps the
+     * spelling it was typed with: "Bob" and "bob" are equal but stay as typed.
+     */
+    public static Tag intern(Tag tag) {
+        if (tag == null) return null;
+        Spelling spelling = new Spelling(tag.tagType, tag.tagValue);
+        synchronized (dictionary) {
+            expungeCollected();
+            Canonical entry = dictionary.get(spelling);
+            Tag canonical = entry == null ? null : entry.get();
+            if (canonical != null) return canonical;
+            dictionary.put(spelling, new Canonical(tag, spelling));
+            return tag;
+        }
+    }
+
+    /** Removes the entries of spellings that were collected. Call holding the dictionary. */
+    private static void expungeCollected() {
+        for (Reference<? extends Tag> r; (r = collected.poll()) != null; ) {
+            Canonical entry = (Canonical) r;
+            // A newer entry may already have replaced the collected one.
+            if (dictionary.get(entry.spelling) == entry) dictionary.remove(entry.spelling);
+        }
+    }
+
+    public static Tag of(TagType tagType, String tagValue) {
+        return intern(new Tag(tagType, tagValue));
+    }
+
+    /** Number of canonical tags, one per type and exact spelling, that are still in use. */
+    public static int internedCount() {
+        synchronized (dictionary) {
+            expungeCollected();
+            int count = 0;
+            for (Canonical entry : dictionary.values()) {
+                if (entry.get() != null) count++;
+            }
+            return count;
+        }
+    }
+
+    /** Tags passed through an Intent come back as the canonical instance. */
+    private Object readResolve() {
+        return intern(this);
     }
 
     public TagType getTagType() {
@@ -27,6 +132,11 @@ public class Tag implements Serializable {
         return tagValue;
     }
 
+    /** The value lower-cased for case-insensitive comparison. */
+    public String getNormalizedValue() {
+        return normalizedValue;
+    }
+
     @Override
     public String toString() {
         return tagType.getDisplayName() + ": " + tagValue;
@@ -34,14 +144,16 @@ public class Tag implements Serializable {
 
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) return true;
         if (!(obj instanceof Tag)) return false;
         Tag other = (Tag) obj;
-        return this.tagType.equals(other.tagType) &&
-               this.tagValue.equalsIgnoreCase(other.tagValue);
+        return this.hash == other.hash
+                && this.tagType == other.tagType
+                && this.normalizedValue.equals(other.normalizedValue);
     }
 
     @Override
     public int hashCode() {
-        return (tagType.toString() + tagValue.toLowerCase()).hashCode();
+        return hash;
     }
 }
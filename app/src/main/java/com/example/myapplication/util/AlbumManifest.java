@@ -0,0 +1,345 @@
+package com.example.myapplication.util;
+
+import android.util.Log;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+import com.example.myapplication.model.PhotoSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * AlbumManifest: the library as a small manifest plus one segment file per album.
+ *
+ * <pre>
+ * header  magic "PHLM", version, body length, CRC32 of body
+ * body    album count, then per album: name, cover ID, photo count, segment file name,
+ *         and for an album with photos its cover photo's ID, image path, filename and hash
+ * </pre>
+ *
+ * Strings are (length, UTF-8 bytes), length -1 for null. A segment is a {@link BinarySnapshot}
+ * of its one album. Reading the manifest returns every album unloaded with its name, cover
+ * and count, and an album's segment is only mapped when its photos are first needed, so
+ * startup grows with the number of albums rather than photos. Segments are never modified:
+ * rewriting the manifest keeps the segment of every album whose photos did not change and
+ * writes new, uniquely named segments only for the others. A segment found damaged when mapped is
+ * left in place and its album stays unloaded and unchanged (see {@link PhotoSource#isReadable}).
+ */
+public class AlbumManifest {
+    private static final String TAG = "AlbumManifest";
+    public static final int MAGIC = 0x50484C4D; // "PHLM"
+    public static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /** One album as listed in the manifest. */
+    private static final class Entry {
+        String name;
+        String coverPhotoId;
+        int photoCount;
+        String segment;
+        Photo cover;
+    }
+
+    /**
+     * Encodes the manifest, and a segment for each album that has photos and no segment on
+     * disk that still holds them. Unloaded albums are paged through rather than loaded.
+     */
+    public static StorageManager.Encoded encode(List<Album> albums) throws IOException {
+        Map<String, byte[]> segments = new LinkedHashMap<>();
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(4096);
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        body.writeInt(albums.size());
+        for (Album a : albums) {
+            int count = a.getPhotoCount();
+            String segment = null;
+            if (count > 0) {
+                segment = segmentOf(a);
+                if (segment == null) {
+                    segment = UUID.randomUUID() + SEGMENT_SUFFIX;
+                    segments.put(segment, BinarySnapshot.encode(Collections.singletonList(a)));
+                }
+            }
+            writeString(body, a.getName());
+            writeString(body, a.getCoverPhotoId());
+            body.writeInt(count);
+            writeString(body, segment);
+            if (count > 0) {
+                Photo cover = a.getCoverPhoto();
+                writeString(body, cover.getId());
+                writeString(body, cover.getImagePath());
+                writeString(body, cover.getFilename());
+                writeString(body, cover.getContentHash());
+            }
+        }
+        body.flush();
+        byte[] payload = bodyBytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        out.putInt(MAGIC).putInt(VERSION).putInt(payload.length).putLong(crc.getValue());
+        out.put(payload);
+        return new StorageManager.Encoded(out.array(), segments);
+    }
+
+    /**
+     * The segment that still holds exactly the album's photos, or null if it needs a new one.
+     * That is the segment of an unloaded album, including one whose segment is damaged, and
+     * of a loaded album none of whose photos changed since it was loaded.
+     */
+    private static String segmentOf(Album album) {
+        PhotoSource source = album.getUnchangedSource();
+        return source instanceof SegmentPhotos ? ((SegmentPhotos) source).file.getName() : null;
+    }
+
+    /** True if the file starts with the manifest magic number. */
+    public static boolean isManifest(File file) {
+        if (!file.exists() || file.length() < HEADER_BYTES) return false;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the manifest and returns its albums unloaded, each backed by its segment in
+     * {@code segmentDir}. Throws if the manifest is damaged or refers to a missing segment,
+     * so the caller can fall back to a backup. Segments themselves are checked when mapped.
+     */
+    public static List<Album> read(File file, File segmentDir) throws IOException {
+        List<Entry> entries = entries(file);
+        List<Album> albums = new ArrayList<>(entries.size());
+        for (Entry e : entries) {
+            String name = e.name == null ? "" : e.name;
+            if (e.segment == null) {
+                Album a = new Album(name);
+                if (e.coverPhotoId != null) a.setCoverPhotoId(e.coverPhotoId);
+                albums.add(a);
+                continue;
+            }
+            File segment = new File(segmentDir, e.segment);
+            if (!segment.isFile()) {
+                throw new IOException("Missing segment " + e.segment + " of album " + name);
+            }
+            albums.add(new Album(name, e.coverPhotoId, new SegmentPhotos(segment, e.photoCount, e.coverPhotoId, e.cover)));
+        }
+        return albums;
+    }
+
+    /**
+     * Deletes segment files in {@code segmentDir} that none of the given manifests refer to:
+     * those of albums rewritten or deleted before the backup manifest was written, and any
+     * left by an interrupted write. Keeps everything if a manifest cannot be read.
+     */
+    static void deleteUnreferenced(File segmentDir, File... manifests) {
+        Set<String> referenced = new HashSet<>();
+        for (File m : manifests) {
+            if (!m.exists()) continue;
+            try {
+                for (Entry e : entries(m)) {
+                    if (e.segment != null) referenced.add(e.segment);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Keeping all segments, cannot read " + m.getName(), e);
+                return;
+            }
+        }
+        File[] files = segmentDir.listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            String name = f.getName();
+            boolean segment = name.endsWith(SEGMENT_SUFFIX) || name.endsWith(SEGMENT_SUFFIX + ".tmp");
+            if (segment && !referenced.contains(name) && !f.delete()) {
+                Log.w(TAG, "Could not delete " + f.getAbsolutePath());
+            }
+        }
+    }
+
+    private static List<Entry> entries(File file) throws IOException {
+        ByteBuffer body = readBody(file);
+        try {
+            int count = body.getInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Entry e = new Entry();
+                e.name = readString(body);
+                e.coverPhotoId = readString(body);
+                e.photoCount = body.getInt();
+                e.segment = readString(body);
+                if (e.photoCount > 0) {
+                    String id = readString(body);
+                    String path = readString(body);
+                    String filename = readString(body);
+                    String hash = readString(body);
+                    e.cover = filename != null ? new Photo(path, filename) : new Photo(path);
+                    if (id != null && !id.isEmpty()) e.cover.setId(id);
+                    e.cover.setContentHash(hash);
+                }
+                if ((e.photoCount > 0) != (e.segment != null)) {
+                    throw new IOException("Album " + e.name + " has " + e.photoCount + " photos and segment " + e.segment);
+                }
+                entries.add(e);
+            }
+            return entries;
+        } catch (RuntimeException e) {
+            // A checksummed body that does not parse was written by something else.
+            throw new IOException("Malformed manifest " + file.getName(), e);
+        }
+    }
+
+    /** Reads the whole file and checks its header and checksum; returns the body. */
+    private static ByteBuffer readBody(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < HEADER_BYTES || raf.readInt() != MAGIC) {
+                throw new IOException("Not an album manifest: " + file);
+            }
+            int version = raf.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported manifest version " + version);
+            }
+            int bodyLength = raf.readInt();
+            long expectedCrc = raf.readLong();
+            if (bodyLength != raf.length() - HEADER_BYTES) {
+                throw new IOException("Manifest truncated: expected " + bodyLength + " bytes, found "
+                        + (raf.length() - HEADER_BYTES));
+            }
+            byte[] body = new byte[bodyLength];
+            raf.readFully(body);
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("Manifest checksum mismatch: " + file);
+            }
+            return ByteBuffer.wrap(body);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int len = in.getInt();
+        if (len < 0) return null;
+        String s = new String(in.array(), in.arrayOffset() + in.position(), len, StandardCharsets.UTF_8);
+        in.position(in.position() + len);
+        return s;
+    }
+
+    /**
+     * An album's photos in its segment file, mapped the first time a photo is needed. The
+     * cover comes from the manifest, so showing the album list maps nothing.
+     */
+    private static final class SegmentPhotos implements PhotoSource {
+        private final File file;
+        private final int count;
+        private final String coverPhotoId;
+        private final Photo cover;
+        private volatile PhotoSource mapped;
+        private volatile boolean damaged;
+
+        SegmentPhotos(File file, int count, String coverPhotoId, Photo cover) {
+            this.file = file;
+            this.count = count;
+            this.coverPhotoId = coverPhotoId;
+            this.cover = cover;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public List<Photo> load(int from, int to) {
+            return readable().load(from, to);
+        }
+
+        @Override
+        public List<Photo> loadAll() {
+            PhotoSource m = mapped();
+            return m == null ? Collections.emptyList() : m.loadAll();
+        }
+
+        @Override
+        public void forEachImage(BiConsumer<String, String> action) {
+            readable().forEachImage(action);
+        }
+
+        @Override
+        public int indexOf(String photoId) {
+            PhotoSource m = mapped();
+            return m == null ? -1 : m.indexOf(photoId);
+        }
+
+        @Override
+        public Photo cover(String photoId) {
+            if (cover != null && Objects.equals(photoId, coverPhotoId)) return cover;
+            PhotoSource m = mapped();
+            return m == null ? cover : m.cover(photoId);
+        }
+
+        @Override
+        public boolean isReadable() {
+            return mapped() != null;
+        }
+
+        private PhotoSource readable() {
+            PhotoSource m = mapped();
+            if (m == null) throw new IllegalStateException("Segment " + file.getName() + " cannot be read");
+            return m;
+        }
+
+        /** The mapped segment, or null if it is damaged. */
+        private PhotoSource mapped() {
+            PhotoSource m = mapped;
+            if (m == null && !damaged) {
+                synchronized (this) {
+                    if (mapped == null && !damaged) mapped = open();
+                    m = mapped;
+                }
+            }
+            return m;
+        }
+
+        /**
+         * Maps the segment, or returns null if it is damaged. The file is left where it is:
+         * the album stays unloaded and the manifest keeps referring to it, so its photos
+         * can still be recovered from it or from the backup manifest's segment.
+         */
+        private PhotoSource open() {
+            try {
+                return BinarySnapshot.readSegment(file, count);
+            } catch (IOException e) {
+                Log.e(TAG, "Segment " + file.getName() + " is corrupt, its album is left unloaded", e);
+                damaged = true;
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.myapplication.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BatchResult: per-item outcome of a DataStore batch operation, in request order.
+ * Items are keyed by what the caller passed in (photo IDs, or URIs for imports).
+ */
+public class BatchResult<K> {
+
+    public enum Status {
+        OK,
+        /** The photo or album does not exist (or the photo is not in the source album). */
+        NOT_FOUND,
+        /** Nothing to do, e.g. every tag was already on the photo. */
+        UNCHANGED,
+        /** The item was valid but could not be applied, e.g. an image could not be copied. */
+        FAILED,
+        /** Skipped because the operation was cancelled before reaching the item. */
+        CANCELLED
+    }
+
+    private final Map<K, Status> results = new LinkedHashMap<>();
+    private final List<K> succeeded = new ArrayList<>();
+
+    /** Records an outcome; an item listed twice keeps its first outcome. */
+    void put(K item, Status status) {
+        if (results.containsKey(item)) return;
+        results.put(item, status);
+        if (status == Status.OK) succeeded.add(item);
+    }
+
+    public Status getStatus(K item) {
+        return results.get(item);
+    }
+
+    public Map<K, Status> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    /** Items that were applied, in request order. */
+    public List<K> getSucceeded() {
+        return Collections.unmodifiableList(succeeded);
+    }
+
+    public int getSuccessCount() {
+        return succeeded.size();
+    }
+
+    /** Number of items that ended with the given status. */
+    public int getCount(Status status) {
+        int count = 0;
+        for (Status s : results.values()) {
+            if (s == status) count++;
+        }
+        return count;
+    }
+
+    public int getFailureCount() {
+        return results.size() - succeeded.size();
+    }
+
+    public boolean isAllSucceeded() {
+        return succeeded.size() == results.size();
+    }
+}
@@ -0,0 +1,459 @@
+package com.example.myapplication.util;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+import com.example.myapplication.model.PhotoSource;
+import com.example.myapplication.model.Tag;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * BinarySnapshot: compact binary encoding of the album library.
+ *
+ * <pre>
+ * header  magic "PHLB", version, body length, CRC32 of body
+ * body    string table   count, then (length, UTF-8 bytes) per string
+ *         tag records    count, then (typeIdx, valueIdx) per tag
+ *         photo records  count, then (idIdx, pathIdx, filenameIdx, hashIdx, firstTag, tagCount) per photo
+ *         album records  count, then (nameIdx, coverIdx, firstPhoto, photoCount) per album
+ * </pre>
+ *
+ * Repeated strings (tag values, type names, directory-heavy image paths) are stored once and
+ * records refer to them by index; -1 means null. Records are fixed width so they are read
+ * straight out of the memory-mapped file. Version 1 photo records had no hashIdx and are
+ * still readable. {@link #readLazy} uses that to decode only the album records up front and
+ * leave each album's photos in the mapping until they are asked for.
+ */
+public class BinarySnapshot {
+    public static final int MAGIC = 0x50484C42; // "PHLB"
+    public static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8;
+    private static final int WRITE_PAGE_SIZE = 512;
+
+    public static byte[] encode(List<Album> albums) throws IOException {
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        List<int[]> tagRecords = new ArrayList<>();
+        List<int[]> photoRecords = new ArrayList<>();
+        List<int[]> albumRecords = new ArrayList<>();
+
+        for (Album a : albums) {
+            int firstPhoto = photoRecords.size();
+            for (Photo p : photosOf(a)) {
+                int firstTag = tagRecords.size();
+                for (Tag t : p.getTags()) {
+                    tagRecords.add(new int[]{
+                            intern(t.getTagType().getDisplayName(), stringIds, strings),
+                            intern(t.getTagValue(), stringIds, strings)});
+                }
+                photoRecords.add(new int[]{
+                        intern(p.getId(), stringIds, strings),
+                        intern(p.getImagePath(), stringIds, strings),
+                        intern(p.getFilename(), stringIds, strings),
+                        intern(p.getContentHash(), stringIds, strings),
+                        firstTag, tagRecords.size() - firstTag});
+            }
+            albumRecords.add(new int[]{
+                    intern(a.getName(), stringIds, strings),
+                    intern(a.getCoverPhotoId(), stringIds, strings),
+                    firstPhoto, photoRecords.size() - firstPhoto});
+        }
+
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream body = new DataOutputStream(new BufferedOutputStream(bodyBytes));
+        body.writeInt(strings.size());
+        for (String s : strings) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            body.writeInt(utf8.length);
+            body.write(utf8);
+        }
+        writeRecords(body, tagRecords);
+        writeRecords(body, photoRecords);
+        writeRecords(body, albumRecords);
+        body.flush();
+        byte[] payload = bodyBytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        out.putInt(MAGIC).putInt(VERSION).putInt(payload.length).putLong(crc.getValue());
+        out.put(payload);
+        return out.array();
+    }
+
+    /**
+     * The album's photos for writing out. An unloaded album is read from its source a page at
+     * a time, so saving the library does not load every album into memory.
+     */
+    static Iterable<Photo> photosOf(Album album) {
+        PhotoSource source = album.getSource();
+        if (album.isLoaded() || source == null) return album.getPhotos();
+        return () -> new Iterator<Photo>() {
+            private List<Photo> page = Collections.emptyList();
+            private int pageStart = 0;
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < source.size();
+            }
+
+            @Override
+            public Photo next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                if (next - pageStart >= page.size()) {
+                    pageStart = next;
+                    page = source.load(next, Math.min(next + WRITE_PAGE_SIZE, source.size()));
+                }
+                return page.get(next++ - pageStart);
+            }
+        };
+    }
+
+    /** True if the file starts with the binary snapshot magic number. */
+    public static boolean isBinarySnapshot(File file) {
+        if (!file.exists() || file.length() < HEADER_BYTES) return false;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Maps the file and rebuilds the library. Throws if the header or checksum does not match,
+     * so a damaged snapshot is reported instead of loading as a partial library.
+     */
+    public static List<Album> read(File file) throws IOException {
+        int[] version = new int[1];
+        ByteBuffer body = mapBody(file, version);
+        return decode(body, version[0]);
+    }
+
+    /**
+     * Like {@link #read}, but only album names, covers and photo counts are decoded. Each
+     * album with photos is returned unloaded, backed by a {@link PhotoSource} that decodes
+     * photo records from the mapping on demand, so the cost no longer grows with the number
+     * of photos and tags. The mapping stays valid after the file is replaced or deleted.
+     */
+    public static List<Album> readLazy(File file) throws IOException {
+        int[] version = new int[1];
+        return new Mapped(mapBody(file, version), version[0]).albums();
+    }
+
+    /**
+     * Maps a snapshot holding a single album, as {@link AlbumManifest} writes for each album,
+     * and returns its photos to be decoded on demand. Throws if the file is damaged or does
+     * not hold {@code photoCount} photos.
+     */
+    static PhotoSource readSegment(File file, int photoCount) throws IOException {
+        List<Album> albums = readLazy(file);
+        PhotoSource source = albums.size() == 1 ? albums.get(0).getSource() : null;
+        int found = source == null ? 0 : source.size();
+        if (albums.size() != 1 || found != photoCount) {
+            throw new IOException("Segment " + file.getName() + " holds " + albums.size() + " album(s) and "
+                    + found + " photos, expected one album of " + photoCount);
+        }
+        return source;
+    }
+
+    /**
+     * Maps the file and checks its header and checksum. Returns the body, positioned at its
+     * start, and stores the format version in {@code versionOut[0]}.
+     */
+    private static ByteBuffer mapBody(File file, int[] versionOut) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC) {
+                throw new IOException("Not a binary album snapshot: " + file);
+            }
+            int version = buf.getInt();
+            if (version != VERSION && version != 1) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int bodyLength = buf.getInt();
+            long expectedCrc = buf.getLong();
+            if (bodyLength != buf.remaining()) {
+                throw new IOException("Snapshot truncated: expected " + bodyLength + " bytes, found " + buf.remaining());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buf.duplicate());
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+            versionOut[0] = version;
+            return buf.slice();
+        }
+    }
+
+    private static List<Album> decode(ByteBuffer buf, int version) {
+        String[] strings = new String[buf.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            int len = buf.getInt();
+            if (buf.hasArray()) {
+                strings[i] = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+                buf.position(buf.position() + len);
+            } else {
+                byte[] utf8 = new byte[len];
+                buf.get(utf8);
+                strings[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+        }
+
+        int tagCount = buf.getInt();
+        Tag[] tags = new Tag[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            String type = str(strings, buf.getInt());
+            String value = str(strings, buf.getInt());
+            tags[i] = new Tag(type, value == null ? "" : value);
+        }
+
+        int photoCount = buf.getInt();
+        Photo[] photos = new Photo[photoCount];
+        for (int i = 0; i < photoCount; i++) {
+            String id = str(strings, buf.getInt());
+            String path = str(strings, buf.getInt());
+            String filename = str(strings, buf.getInt());
+            String hash = version >= 2 ? str(strings, buf.getInt()) : null;
+            int firstTag = buf.getInt();
+            int count = buf.getInt();
+            Photo p = filename != null ? new Photo(path, filename) : new Photo(path);
+            if (id != null && !id.isEmpty()) p.setId(id);
+            p.setContentHash(hash);
+            p.addTags(Arrays.asList(tags).subList(firstTag, firstTag + count));
+            photos[i] = p;
+        }
+
+        int albumCount = buf.getInt();
+        List<Album> albums = new ArrayList<>(albumCount);
+        for (int i = 0; i < albumCount; i++) {
+            String name = str(strings, buf.getInt());
+            String cover = str(strings, buf.getInt());
+            int firstPhoto = buf.getInt();
+            int count = buf.getInt();
+            Album a = new Album(name == null ? "" : name);
+            if (cover != null) a.setCoverPhotoId(cover);
+            for (int p = firstPhoto; p < firstPhoto + count; p++) {
+                a.addPhoto(photos[p]);
+            }
+            albums.add(a);
+        }
+        return albums;
+    }
+
+    /**
+     * A mapped snapshot body. Only absolute reads are used, on the shared buffer or on a
+     * duplicate, so any number of threads can decode from it at once.
+     */
+    private static final class Mapped {
+        private final ByteBuffer body;
+        private final int photoRecordBytes;
+        private final int[] stringOffsets;
+        private final int tagsOffset;
+        private final int photosOffset;
+        private final int albumsOffset;
+
+        Mapped(ByteBuffer body, int version) {
+            this.body = body;
+            this.photoRecordBytes = (version >= 2 ? 6 : 5) * 4;
+            // One pass over the string lengths; the strings themselves are decoded when used.
+            stringOffsets = new int[body.getInt(0)];
+            int offset = 4;
+            for (int i = 0; i < stringOffsets.length; i++) {
+                stringOffsets[i] = offset;
+                offset += 4 + body.getInt(offset);
+            }
+            tagsOffset = offset;
+            photosOffset = tagsOffset + 4 + body.getInt(tagsOffset) * 8;
+            albumsOffset = photosOffset + 4 + body.getInt(photosOffset) * photoRecordBytes;
+        }
+
+        List<Album> albums() {
+            int count = body.getInt(albumsOffset);
+            List<Album> albums = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int record = albumsOffset + 4 + i * 16;
+                String name = string(body.getInt(record));
+                String cover = string(body.getInt(record + 4));
+                int firstPhoto = body.getInt(record + 8);
+                int photoCount = body.getInt(record + 12);
+                if (name == null) name = "";
+                Album a;
+                if (photoCount == 0) {
+                    a = new Album(name);
+                    if (cover != null) a.setCoverPhotoId(cover);
+                } else {
+                    a = new Album(name, cover, new MappedPhotos(this, firstPhoto, photoCount));
+                }
+                albums.add(a);
+            }
+            return albums;
+        }
+
+        Photo photo(int index) {
+            int record = photosOffset + 4 + index * photoRecordBytes;
+            String id = string(body.getInt(record));
+            String path = string(body.getInt(record + 4));
+            String filename = string(body.getInt(record + 8));
+            String hash = null;
+            if (photoRecordBytes == 24) {
+                hash = string(body.getInt(record + 12));
+                record += 4;
+            }
+            int firstTag = body.getInt(record + 12);
+            int tagCount = body.getInt(record + 16);
+            Photo p = filename != null ? new Photo(path, filename) : new Photo(path);
+            if (id != null && !id.isEmpty()) p.setId(id);
+            p.setContentHash(hash);
+            List<Tag> photoTags = new ArrayList<>(tagCount);
+            for (int t = firstTag; t < firstTag + tagCount; t++) {
+                int tag = tagsOffset + 4 + t * 8;
+                String value = string(body.getInt(tag + 4));
+                photoTags.add(new Tag(string(body.getInt(tag)), value == null ? "" : value));
+            }
+            p.addTags(photoTags);
+            return p;
+        }
+
+        String imagePath(int index) {
+            return string(body.getInt(photosOffset + 4 + index * photoRecordBytes + 4));
+        }
+
+        String contentHash(int index) {
+            if (photoRecordBytes != 24) return null;
+            return string(body.getInt(photosOffset + 4 + index * photoRecordBytes + 12));
+        }
+
+        int photoIdIndex(int index) {
+            return body.getInt(photosOffset + 4 + index * photoRecordBytes);
+        }
+
+        String string(int idx) {
+            if (idx < 0) return null;
+            int offset = stringOffsets[idx];
+            byte[] utf8 = new byte[body.getInt(offset)];
+            ByteBuffer in = body.duplicate();
+            in.position(offset + 4);
+            in.get(utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        /** Compares a stored string with UTF-8 bytes without decoding it. */
+        boolean stringEquals(int idx, byte[] utf8) {
+            if (idx < 0) return false;
+            int offset = stringOffsets[idx];
+            if (body.getInt(offset) != utf8.length) return false;
+            for (int i = 0; i < utf8.length; i++) {
+                if (body.get(offset + 4 + i) != utf8[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    /** One album's run of photo records in a mapped snapshot. */
+    private static final class MappedPhotos implements PhotoSource {
+        private final Mapped mapped;
+        private final int first;
+        private final int count;
+        private volatile List<Photo> all;
+
+        MappedPhotos(Mapped mapped, int first, int count) {
+            this.mapped = mapped;
+            this.first = first;
+            this.count = count;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public List<Photo> load(int from, int to) {
+            List<Photo> loaded = all;
+            if (loaded != null) return loaded.subList(from, to);
+            if (from < 0 || to > count || from > to) {
+                throw new IndexOutOfBoundsException("[" + from + ", " + to + ") of " + count);
+            }
+            List<Photo> photos = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) photos.add(mapped.photo(first + i));
+            return photos;
+        }
+
+        @Override
+        public synchronized List<Photo> loadAll() {
+            if (all == null) all = Collections.unmodifiableList(load(0, count));
+            return all;
+        }
+
+        @Override
+        public void forEachImage(BiConsumer<String, String> action) {
+            for (int i = first; i < first + count; i++) {
+                action.accept(mapped.imagePath(i), mapped.contentHash(i));
+            }
+        }
+
+        @Override
+        public int indexOf(String photoId) {
+            if (photoId == null) return -1;
+            byte[] utf8 = photoId.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < count; i++) {
+                if (mapped.stringEquals(mapped.photoIdIndex(first + i), utf8)) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public Photo cover(String coverPhotoId) {
+            int index = Math.max(indexOf(coverPhotoId), 0);
+            return load(index, index + 1).get(0);
+        }
+
+        @Override
+        public boolean isReadable() {
+            return true;
+        }
+    }
+
+    private static int intern(String s, Map<String, Integer> ids, List<String> strings) {
+        if (s == null) return -1;
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = strings.size();
+            ids.put(s, id);
+            strings.add(s);
+        }
+        return id;
+    }
+
+    private static String str(String[] strings, int idx) {
+        return idx < 0 ? null : strings[idx];
+    }
+
+    private static void writeRecords(DataOutputStream out, List<int[]> records) throws IOException {
+        out.writeInt(records.size());
+        for (int[] rec : records) {
+            for (int v : rec) out.writeInt(v);
+        }
+    }
+}
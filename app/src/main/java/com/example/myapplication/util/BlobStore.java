@@ -0,0 +1,168 @@
+package com.example.myapplication.util;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * BlobStore: content-addressed image files under filesDir/images, shared between photos.
+ * An import is first staged to a temporary file while its SHA-256 is computed; committing
+ * it either renames it to {@code <hash>.jpg} or, if that content is already stored, drops
+ * the copy and reuses the existing file. Reference counts are derived from the library on
+ * load (one per photo using a path), so nothing extra is persisted, and a file is deleted
+ * only when the last photo using it is removed. Photos imported before hashing keep their
+ * own UUID-named file with a count of one.
+ * Not thread-safe on its own; DataStore only calls the counting methods under its lock.
+ */
+public class BlobStore {
+    private static final String TAG = "BlobStore";
+    private static final String IMAGES_DIR = "images";
+
+    /** An image copied into app storage but not yet added to the library. */
+    public static class Staged {
+        final File file;
+        final String hash;
+
+        Staged(File file, String hash) {
+            this.file = file;
+            this.hash = hash;
+        }
+
+        /** Display filename for the photo, in the same style as before content addressing. */
+        String displayName() {
+            String name = file.getName();
+            return name.substring(0, name.length() - ".tmp".length()) + ".jpg";
+        }
+
+        void discard() {
+            if (file.exists() && !file.delete()) Log.w(TAG, "Could not delete staged file " + file);
+        }
+    }
+
+    private final Map<String, String> pathsByHash = new HashMap<>();
+    private final Map<String, Integer> refCounts = new HashMap<>();
+
+    /**
+     * Copies the image into the images directory, hashing it on the way. Touches no shared
+     * state, so imports can stage concurrently without the DataStore lock.
+     */
+    public static Staged stage(Context context, Uri imageUri) throws IOException {
+        File imagesDir = new File(context.getFilesDir(), IMAGES_DIR);
+        if (!imagesDir.exists()) {
+            imagesDir.mkdirs();
+        }
+        File staging = new File(imagesDir, UUID.randomUUID().toString() + ".tmp");
+        MessageDigest digest = newDigest();
+        try {
+            ImageCopier.copy(context, imageUri, staging, digest);
+        } catch (IOException | RuntimeException e) {
+            staging.delete();
+            throw e;
+        }
+        return new Staged(staging, toHex(digest.digest()));
+    }
+
+    public void rebuild(List<Album> albums) {
+        pathsByHash.clear();
+        refCounts.clear();
+        if (albums == null) return;
+        for (Album a : albums) {
+            // Photos of unloaded albums are counted by DataStore when it needs them.
+            if (!a.isLoaded()) continue;
+            for (Photo p : a.getPhotos()) {
+                acquire(p);
+            }
+        }
+    }
+
+    /** Path of the stored file with this content, or null if none is stored. */
+    public String find(String hash) {
+        return hash == null ? null : pathsByHash.get(hash);
+    }
+
+    /**
+     * Turns a staged copy into a stored blob and returns its path. If the content is already
+     * stored the staged copy is deleted and the existing path returned. The caller must
+     * {@link #acquire} it for the photo that will use it.
+     */
+    public String commit(Staged staged) throws IOException {
+        String existing = find(staged.hash);
+        if (existing != null && new File(existing).exists()) {
+            staged.discard();
+            return existing;
+        }
+        File target = new File(staged.file.getParentFile(), staged.hash + ".jpg");
+        if (!staged.file.renameTo(target)) {
+            staged.discard();
+            throw new IOException("Could not store blob " + target);
+        }
+        return target.getAbsolutePath();
+    }
+
+    /** Counts one more photo using its image file. */
+    public void acquire(Photo photo) {
+        acquire(photo.getImagePath(), photo.getContentHash());
+    }
+
+    /** Counts one more photo using the image file at {@code path} with content {@code hash}. */
+    public void acquire(String path, String hash) {
+        if (path == null) return;
+        Integer count = refCounts.get(path);
+        refCounts.put(path, count == null ? 1 : count + 1);
+        if (hash != null) pathsByHash.putIfAbsent(hash, path);
+    }
+
+    /**
+     * Counts one photo fewer using its image file, deleting the file when no photo uses it.
+     * Returns true if the file was deleted.
+     */
+    public boolean release(Photo photo) {
+        String path = photo.getImagePath();
+        if (path == null) return false;
+        Integer count = refCounts.get(path);
+        if (count != null && count > 1) {
+            refCounts.put(path, count - 1);
+            return false;
+        }
+        refCounts.remove(path);
+        if (photo.getContentHash() != null && path.equals(pathsByHash.get(photo.getContentHash()))) {
+            pathsByHash.remove(photo.getContentHash());
+        }
+        File f = new File(path);
+        return f.exists() && f.delete();
+    }
+
+    public int getRefCount(String path) {
+        Integer count = refCounts.get(path);
+        return count == null ? 0 : count;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+}
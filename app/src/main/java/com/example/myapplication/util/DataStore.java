@@ -6,224 +6,776 @@ import android.util.Log;
 
 import com.example.myapplication.model.Album;
 import com.example.myapplication.model.Photo;
+import com.example.myapplication.model.PhotoSource;
 import com.example.myapplication.model.Tag;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * DataStore: the photo library and every change to it. Changes are made under the class
+ * lock, journaled, and then published as a new {@link LibrarySnapshot}; the read methods
+ * (getAlbums and the find methods) only read the current snapshot, so background threads
+ * never wait on the UI thread, persistence or each other to read. Each published snapshot
+ * is also sent to {@link LibraryEvents} with typed events saying which rows changed.
+ * Albums load with their names and counts only; an album's photos are decoded and indexed
+ * the first time a change, a lookup or {@link #loadAlbum} needs them, and search loads all.
+ */
 public class DataStore {
     private static final String TAG = "DataStore";
 
     private static List<Album> albumsCache = null;
+    private static volatile LibrarySnapshot snapshot = null;
+    private static final List<LibraryEvent> pendingEvents = new ArrayList<>();
+    // Search results come back in album order, as of the latest snapshot.
+    private static final TagIndex tagIndex = new TagIndex(photo -> {
+        LibrarySnapshot s = snapshot;
+        return s == null ? Long.MAX_VALUE : s.positionOf(photo);
+    });
+    private static final LibraryIndex library = new LibraryIndex();
+    private static final BlobStore blobs = new BlobStore();
+    private static final WriteBehindPersister persister = new WriteBehindPersister();
+    // Albums whose photos are not in the indexes yet, and those of them whose image files
+    // blobs already counts (see countUnloadedBlobs).
+    private static final Set<Album> unindexed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private static final Set<Album> blobsCounted = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Albums whose photos turned out to be unreadable; they stay unloaded and unchanged.
+    private static final Set<Album> unreadable = Collections.newSetFromMap(new IdentityHashMap<>());
+    private static volatile boolean allIndexed = false;
+    private static boolean compacting = false;
+    private static boolean compactRequested = false;
 
     private static synchronized void ensureLoaded(Context context) {
         if (albumsCache == null) {
             albumsCache = StorageManager.loadAlbums(context);
             if (albumsCache == null) albumsCache = new ArrayList<>();
+            tagIndex.rebuild(albumsCache);
+            library.rebuild(albumsCache);
+            blobs.rebuild(albumsCache);
+            for (Album a : albumsCache) {
+                if (!a.isLoaded()) unindexed.add(a);
+            }
+            allIndexed = unindexed.isEmpty();
+            publish();
+        }
+    }
+
+    /**
+     * Loads the album's photos if they are not loaded and adds them to the indexes. Every
+     * change that touches an album's photos goes through here first. Returns the album, or
+     * null if its photos cannot be read, so that the change is refused like for a missing album.
+     */
+    private static Album contents(Album album) {
+        if (album == null || unreadable.contains(album)) return null;
+        if (!unindexed.contains(album)) return album;
+        album.loadPhotos();
+        unindexed.remove(album);
+        allIndexed = unindexed.isEmpty();
+        if (!album.isLoaded()) {
+            Log.e(TAG, "Photos of album " + album.getName() + " cannot be read, leaving it unchanged");
+            unreadable.add(album);
+            blobsCounted.remove(album);
+            return null;
+        }
+        library.indexPhotos(album);
+        boolean counted = blobsCounted.remove(album);
+        for (Photo p : album.getPhotos()) {
+            tagIndex.addPhoto(p);
+            if (!counted) blobs.acquire(p);
+        }
+        return album;
+    }
+
+    /** The photo with this ID, loading the album that holds it if that album is not loaded yet. */
+    private static Photo locate(String photoId) {
+        Photo p = library.photo(photoId);
+        if (p != null || photoId == null || unindexed.isEmpty()) return p;
+        for (Album a : new ArrayList<>(unindexed)) {
+            PhotoSource source = a.getSource();
+            if (source == null || source.indexOf(photoId) >= 0) {
+                contents(a);
+                p = library.photo(photoId);
+                if (p != null) return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Counts the image files of unloaded albums without loading them, so that releasing a
+     * photo never deletes a file an unloaded album still uses. Only the path and hash of each
+     * photo are read. Call before any release.
+     */
+    private static void countUnloadedBlobs() {
+        for (Album a : unindexed) {
+            PhotoSource source = a.getSource();
+            if (source != null && !source.isReadable()) continue;
+            if (!blobsCounted.add(a)) continue;
+            if (source == null) {
+                for (Photo p : a.getPhotos()) blobs.acquire(p);
+            } else {
+                source.forEachImage(blobs::acquire);
+            }
+        }
+    }
+
+    /** Drops the removed photos' cached thumbnails on the persister thread. */
+    private static void invalidateThumbnails(Context context, List<String> photoIds) {
+        if (photoIds.isEmpty()) return;
+        final Context appContext = context.getApplicationContext();
+        persister.execute(() -> ThumbnailCache.invalidate(appContext, photoIds));
+    }
+
+    /** Name of the album holding the photo, for journal records; null if it is in none. */
+    private static String albumNameOf(Photo p) {
+        Album a = library.albumOf(p.getId());
+        return a == null ? null : a.getName();
+    }
+
+    /**
+     * Swaps in a snapshot of the current library for readers and posts it with the events
+     * recorded since the last one. Called under the lock after every change.
+     */
+    private static void publish() {
+        snapshot = (snapshot == null ? LibrarySnapshot.EMPTY : snapshot).next(albumsCache);
+        List<LibraryEvent> events = new ArrayList<>(pendingEvents);
+        pendingEvents.clear();
+        LibraryEvents.post(snapshot, events);
+    }
+
+    private static int albumPosition(Album album) {
+        for (int i = 0; i < albumsCache.size(); i++) {
+            if (albumsCache.get(i) == album) return i;
         }
+        return -1;
     }
 
-    private static synchronized void persist(Context context) {
-        if (albumsCache == null) albumsCache = new ArrayList<>();
-        StorageManager.saveAlbums(context, albumsCache);
+    /** Records that a photo's row changed, e.g. its name or tags; call before any positional change. */
+    private static void photoChanged(Photo p, boolean renamed) {
+        Album a = library.albumOf(p.getId());
+        if (a == null) return;
+        int albumPos = albumPosition(a);
+        int pos = a.getPhotoIndex(p);
+        pendingEvents.add(renamed ? LibraryEvent.photoRenamed(a.getName(), albumPos, pos, p.getId())
+                : LibraryEvent.tagsChanged(a.getName(), albumPos, pos, p.getId()));
     }
 
-    public static synchronized List<Album> getAlbums(Context context) {
+    /** The current snapshot, loading the library first if needed. Never blocks once loaded. */
+    public static LibrarySnapshot snapshot(Context context) {
+        LibrarySnapshot s = snapshot;
+        if (s == null) {
+            ensureLoaded(context);
+            s = snapshot;
+        }
+        return s;
+    }
+
+    /**
+     * Records a single mutation in the journal instead of rewriting the whole snapshot.
+     * The record is written by the persister thread together with any others queued within
+     * its coalescing window. If encoding fails the edit is only in memory, so a compaction is
+     * forced to capture it.
+     */
+    private static synchronized void journal(Context context, String op, String... keyValues) {
+        schedulePersist(context, MutationJournal.append(context, op, keyValues));
+    }
+
+    /**
+     * Publishes the changed library to readers, then hands queued records to the persister,
+     * or compacts if the journal has grown past its threshold or a record could not be
+     * encoded. Batch operations queue all their records first and call this once.
+     */
+    private static synchronized void schedulePersist(Context context, boolean allEncoded) {
+        publish();
+        if (!allEncoded || MutationJournal.size(context) >= MutationJournal.COMPACT_THRESHOLD_BYTES) {
+            compact(context);
+        } else {
+            persister.markDirty(context);
+        }
+    }
+
+    /**
+     * Folds the journal into a fresh snapshot. The snapshot and the queued records it covers
+     * are captured under the lock; the journal rotation and file writes happen on the
+     * persister thread, in order with the batched journal writes.
+     */
+    private static synchronized void compact(Context context) {
+        if (albumsCache == null) return;
+        if (compacting) {
+            compactRequested = true;
+            return;
+        }
+        final byte[] records = MutationJournal.drainForCompaction();
+        final StorageManager.Encoded encoded;
+        try {
+            encoded = StorageManager.encodeAlbums(albumsCache);
+        } catch (Exception e) {
+            Log.e(TAG, "Error encoding snapshot for compaction", e);
+            MutationJournal.requeue(records);
+            persister.markDirty(context);
+            return;
+        }
+        compacting = true;
+        final Context appContext = context.getApplicationContext();
+        persister.execute(() -> writeCompaction(appContext, records, encoded));
+    }
+
+    /** Persister-thread half of {@link #compact}. */
+    private static void writeCompaction(Context appContext, byte[] records, StorageManager.Encoded snapshot) {
+        try {
+            boolean journaled = false;
+            try {
+                MutationJournal.write(appContext, records);
+                journaled = true;
+            } catch (IOException e) {
+                // Retried by the persister as an ordinary batched write.
+                Log.e(TAG, "Error writing journal before compaction", e);
+                MutationJournal.requeue(records);
+                persister.markDirty(appContext);
+            }
+            if (journaled && MutationJournal.rotate(appContext)) {
+                StorageManager.writeSnapshot(appContext, snapshot);
+                MutationJournal.retireRotated(appContext);
+            }
+        } catch (IOException e) {
+            // The rotated journal stays on disk and is replayed on the next load.
+            Log.e(TAG, "Error writing compacted snapshot", e);
+        } finally {
+            synchronized (DataStore.class) {
+                compacting = false;
+                if (compactRequested) {
+                    compactRequested = false;
+                    compact(appContext);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts writing every queued edit to disk without waiting. Activities call this from
+     * onStop so the main thread never blocks on the journal.
+     */
+    public static void persist(Context context) {
+        persister.persist(context);
+    }
+
+    /** Blocks until every queued edit is on disk. */
+    public static void flush(Context context) {
+        persister.flush(context);
+    }
+
+    /**
+     * Forgets the library in memory so the next call loads it from disk again. Only for
+     * tests, which flush first so nothing is still being written.
+     */
+    static synchronized void reset() {
+        albumsCache = null;
+        snapshot = null;
+        pendingEvents.clear();
+        tagIndex.rebuild(null);
+        library.rebuild(null);
+        blobs.rebuild(null);
+        unindexed.clear();
+        blobsCounted.clear();
+        unreadable.clear();
+        allIndexed = false;
+        compacting = false;
+        compactRequested = false;
+        StorageManager.clearCache();
+        MutationJournal.reset();
+    }
+
+    public static WriteBehindPersister getPersister() {
+        return persister;
+    }
+
+    /** Read-only albums of the current snapshot. */
+    public static List<Album> getAlbums(Context context) {
+        return snapshot(context).getAlbums();
+    }
+
+    /** The tag index over every photo. The first call loads every album that is not loaded yet. */
+    public static TagIndex getTagIndex(Context context) {
+        snapshot(context);
+        if (!allIndexed) loadAllAlbums();
+        return tagIndex;
+    }
+
+    private static synchronized void loadAllAlbums() {
+        if (unindexed.isEmpty()) return;
+        boolean loaded = false;
+        for (Album a : new ArrayList<>(unindexed)) loaded |= contents(a) != null;
+        if (loaded) publish();
+    }
+
+    /**
+     * Loads the album's photos so they can be looked up by ID and changed, and returns its
+     * snapshot copy; null if there is no such album. Browsing an album does not need this.
+     */
+    public static synchronized Album loadAlbum(Context context, String name) {
         ensureLoaded(context);
-        return albumsCache;
+        Album a = library.album(name);
+        if (a == null) return null;
+        if (unindexed.contains(a) && contents(a) != null) publish();
+        return snapshot.findAlbum(a.getName());
     }
 
     public static synchronized boolean createAlbum(Context context, String name) {
         ensureLoaded(context);
         if (name == null || name.trim().isEmpty()) return false;
-        if (findAlbumByName(name) != null) return false;
+        if (library.album(name.trim()) != null) return false;
         Album a = new Album(name.trim());
-        albumsCache.add(a);
-        persist(context);
+        library.addAlbum(albumsCache, a);
+        pendingEvents.add(LibraryEvent.albumAdded(a.getName(), albumsCache.size() - 1));
+        journal(context, MutationJournal.OP_CREATE_ALBUM, "album", a.getName());
         return true;
     }
 
     public static synchronized boolean deleteAlbum(Context context, String name) {
         ensureLoaded(context);
-        Album a = findAlbumByName(name);
+        Album a = library.album(name);
         if (a == null) return false;
 
-        for (Photo p : a.getPhotos()) {
-            File f = new File(p.getImagePath());
-            if (f.exists()) {
-                f.delete();
-            }
+        // An album with unreadable photos can still be deleted; its image files are kept.
+        boolean readable = contents(a) != null;
+        unreadable.remove(a);
+        countUnloadedBlobs();
+        List<String> removedIds = new ArrayList<>();
+        for (Photo p : readable ? a.getPhotos() : Collections.<Photo>emptyList()) {
+            blobs.release(p);
+            removedIds.add(p.getId());
+            tagIndex.removePhoto(p);
         }
-        albumsCache.remove(a);
-        persist(context);
+        invalidateThumbnails(context, removedIds);
+        int position = albumPosition(a);
+        library.removeAlbum(albumsCache, a);
+        pendingEvents.add(LibraryEvent.albumRemoved(a.getName(), position));
+        journal(context, MutationJournal.OP_DELETE_ALBUM, "album", a.getName());
         return true;
     }
 
     public static synchronized boolean renameAlbum(Context context, String oldName, String newName) {
         ensureLoaded(context);
-        Album a = findAlbumByName(oldName);
+        Album a = library.album(oldName);
         if (a == null || newName == null || newName.trim().isEmpty()) return false;
-        Album existing = findAlbumByName(newName);
+        Album existing = library.album(newName.trim());
         if (existing != null && existing != a) return false;
-        a.setName(newName.trim());
-        persist(context);
+        String previousName = a.getName();
+        library.renameAlbum(a, newName.trim());
+        pendingEvents.add(LibraryEvent.albumRenamed(previousName, a.getName(), albumPosition(a)));
+        journal(context, MutationJournal.OP_RENAME_ALBUM, "album", previousName, "to", a.getName());
         return true;
     }
 
-    public static synchronized Photo addPhoto(Context context, String albumName, Uri imageUri) {
+    /**
+     * Pins a photo of the album as its cover; a null photoId goes back to the default cover.
+     */
+    public static synchronized boolean setAlbumCover(Context context, String albumName, String photoId) {
         ensureLoaded(context);
-        Album a = findAlbumByName(albumName);
-        if (a == null) return null;
+        Album a = library.album(albumName);
+        if (a == null) return false;
+        if (photoId != null && findPhotoInAlbumById(contents(a), photoId) == null) return false;
+        a.setCoverPhotoId(photoId);
+        pendingEvents.add(LibraryEvent.coverChanged(a.getName(), albumPosition(a)));
+        journal(context, MutationJournal.OP_SET_COVER, "album", a.getName(),
+                "photo", photoId == null ? "" : photoId);
+        return true;
+    }
 
-        String savedPath = saveImageFromUri(context, imageUri);
-        if (savedPath == null) {
-            return null;
+    /**
+     * Imports one image into the album. Returns null if it could not be copied or the album
+     * already holds a photo with the same content.
+     */
+    public static Photo addPhoto(Context context, String albumName, Uri imageUri) {
+        BlobStore.Staged staged = stageImage(context, imageUri);
+        if (staged == null) return null;
+        synchronized (DataStore.class) {
+            ensureLoaded(context);
+            Album a = contents(library.album(albumName));
+            if (a == null) {
+                staged.discard();
+                return null;
+            }
+            try {
+                int position = a.getPhotoCount();
+                Photo p = addStaged(context, a, staged, contentHashes(a));
+                if (p != null) {
+                    pendingEvents.add(LibraryEvent.photosAdded(a.getName(), albumPosition(a), position, 1));
+                    schedulePersist(context, appendAddPhoto(context, a, p));
+                }
+                return p;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to store image from URI: " + imageUri, e);
+                return null;
+            }
         }
+    }
 
-        Photo p = new Photo(savedPath);
-        a.addPhoto(p);
-        persist(context);
+    /**
+     * Commits a staged image to the blob store and adds it to the album. Returns null,
+     * discarding the copy, if {@code albumHashes} shows the album already has this content.
+     */
+    private static Photo addStaged(Context context, Album album, BlobStore.Staged staged,
+                                   Set<String> albumHashes) throws IOException {
+        if (!albumHashes.add(staged.hash)) {
+            staged.discard();
+            return null;
+        }
+        String path = blobs.commit(staged);
+        Photo p = new Photo(path, staged.displayName());
+        p.setContentHash(staged.hash);
+        blobs.acquire(p);
+        library.addPhoto(album, p);
+        tagIndex.addPhoto(p);
         return p;
     }
 
+    private static boolean appendAddPhoto(Context context, Album album, Photo p) {
+        return MutationJournal.append(context, MutationJournal.OP_ADD_PHOTO, "album", album.getName(),
+                "photo", p.getId(), "path", p.getImagePath(), "filename", p.getFilename(), "hash", p.getContentHash());
+    }
+
+    private static Set<String> contentHashes(Album album) {
+        Set<String> hashes = new HashSet<>();
+        for (Photo p : album.getPhotos()) {
+            if (p.getContentHash() != null) hashes.add(p.getContentHash());
+        }
+        return hashes;
+    }
+
     public static synchronized boolean removePhotoById(Context context, String albumName, String photoId) {
         ensureLoaded(context);
-        Album a = findAlbumByName(albumName);
+        Album a = contents(library.album(albumName));
         if (a == null || photoId == null) return false;
         Photo p = findPhotoInAlbumById(a, photoId);
         if (p == null) return false;
 
-        File f = new File(p.getImagePath());
-        if (f.exists()) {
-            f.delete();
-        }
+        countUnloadedBlobs();
+        blobs.release(p);
+        invalidateThumbnails(context, Collections.singletonList(p.getId()));
 
-        a.removePhoto(p);
-        persist(context);
+        pendingEvents.add(LibraryEvent.photosRemoved(a.getName(), albumPosition(a), a.getPhotoIndex(p), 1));
+        library.removePhoto(a, p);
+        tagIndex.removePhoto(p);
+        journal(context, MutationJournal.OP_REMOVE_PHOTO, "album", a.getName(), "photo", p.getId());
         return true;
     }
 
     public static synchronized boolean movePhotoById(Context context, String fromAlbumName, String toAlbumName, String photoId) {
         ensureLoaded(context);
-        Album src = findAlbumByName(fromAlbumName);
-        Album dst = findAlbumByName(toAlbumName);
+        Album src = contents(library.album(fromAlbumName));
+        Album dst = contents(library.album(toAlbumName));
         if (src == null || dst == null || photoId == null) return false;
         Photo p = findPhotoInAlbumById(src, photoId);
         if (p == null) return false;
 
-        src.removePhoto(p);
-        dst.addPhoto(p);
-        persist(context);
+        int position = src.getPhotoIndex(p);
+        library.movePhoto(p, src, dst);
+        pendingEvents.add(LibraryEvent.photosMoved(src.getName(), albumPosition(src), position, 1,
+                dst.getName(), albumPosition(dst), dst.getPhotoCount() - 1));
+        journal(context, MutationJournal.OP_MOVE_PHOTO, "album", src.getName(), "to", dst.getName(),
+                "photo", p.getId());
         return true;
     }
 
     public static synchronized boolean renamePhotoById(Context context, String photoId, String newFilename) {
         ensureLoaded(context);
         if (newFilename == null || newFilename.trim().isEmpty() || photoId == null) return false;
-        Photo p = findPhotoById(photoId);
+        Photo p = locate(photoId);
         if (p == null) return false;
         p.setFilename(newFilename.trim());
-        persist(context);
+        photoChanged(p, true);
+        journal(context, MutationJournal.OP_RENAME_PHOTO, "album", albumNameOf(p), "photo", p.getId(),
+                "filename", p.getFilename());
         return true;
     }
 
     public static synchronized boolean addTag(Context context, String photoId, Tag tag) {
         ensureLoaded(context);
         if (tag == null || photoId == null) return false;
-        Photo p = findPhotoById(photoId);
+        Photo p = locate(photoId);
         if (p == null) return false;
-        for (Tag t : p.getTags()) {
-            if (t.getTagType() == tag.getTagType() && t.getTagValue().equalsIgnoreCase(tag.getTagValue())) {
-                return false;
-            }
-        }
+        if (p.findTag(tag) != null) return false;
+        tag = Tag.intern(tag);
         p.addTag(tag);
-        persist(context);
+        tagIndex.addTag(p, tag);
+        photoChanged(p, false);
+        journal(context, MutationJournal.OP_ADD_TAG, "album", albumNameOf(p), "photo", p.getId(),
+                "type", tag.getTagType().getDisplayName(), "value", tag.getTagValue());
         return true;
     }
 
     public static synchronized boolean removeTag(Context context, String photoId, Tag tag) {
         ensureLoaded(context);
         if (tag == null || photoId == null) return false;
-        Photo p = findPhotoById(photoId);
+        Photo p = locate(photoId);
         if (p == null) return false;
-        Tag toRemove = null;
-        for (Tag t : p.getTags()) {
-            if (t.getTagType() == tag.getTagType() && t.getTagValue().equalsIgnoreCase(tag.getTagValue())) {
-                toRemove = t;
-                break;
-            }
-        }
+        Tag toRemove = p.findTag(tag);
         if (toRemove == null) return false;
         p.removeTag(toRemove);
-        persist(context);
+        tagIndex.removeTag(p, toRemove);
+        photoChanged(p, false);
+        journal(context, MutationJournal.OP_REMOVE_TAG, "album", albumNameOf(p), "photo", p.getId(),
+                "type", toRemove.getTagType().getDisplayName(), "value", toRemove.getTagValue());
         return true;
     }
 
-    public static synchronized Album findAlbumByName(String name) {
-        if (albumsCache == null) return null;
-        if (name == null) return null;
-        for (Album a : albumsCache) {
-            if (a.getName().equalsIgnoreCase(name)) return a;
+    /**
+     * Moves every listed photo that is in the source album. One lock acquisition and one
+     * persister hand-off for the whole batch. Photos are moved in album order, so they keep
+     * their relative order in the target album and each run of adjacent photos is one event.
+     */
+    public static synchronized BatchResult<String> movePhotos(Context context, List<String> photoIds,
+                                                              String fromAlbumName, String toAlbumName) {
+        ensureLoaded(context);
+        BatchResult<String> result = new BatchResult<>();
+        Album src = contents(library.album(fromAlbumName));
+        Album dst = contents(library.album(toAlbumName));
+        List<Photo> found = new ArrayList<>();
+        for (String id : photoIds) {
+            Photo p = src == null || dst == null ? null : findPhotoInAlbumById(src, id);
+            if (p == null) {
+                result.put(id, BatchResult.Status.NOT_FOUND);
+                continue;
+            }
+            if (result.getStatus(id) == null) found.add(p);
+            result.put(id, BatchResult.Status.OK);
         }
-        return null;
-    }
+        if (found.isEmpty()) return result;
 
-    private static Photo findPhotoInAlbumById(Album album, String photoId) {
-        if (album == null || photoId == null) return null;
-        for (Photo p : album.getPhotos()) {
-            if (photoId.equals(p.getId())) {
-                return p;
+        int srcPos = albumPosition(src);
+        int dstPos = albumPosition(dst);
+        int[] positions = sortByPosition(src, found);
+        boolean encoded = true;
+        int removed = 0;
+        for (int start = 0; start < found.size(); ) {
+            int end = runEnd(positions, start);
+            for (int i = start; i < end; i++) {
+                Photo p = found.get(i);
+                library.movePhoto(p, src, dst);
+                encoded &= MutationJournal.append(context, MutationJournal.OP_MOVE_PHOTO, "album", src.getName(),
+                        "to", dst.getName(), "photo", p.getId());
             }
+            int count = end - start;
+            pendingEvents.add(LibraryEvent.photosMoved(src.getName(), srcPos, positions[start] - removed, count,
+                    dst.getName(), dstPos, dst.getPhotoCount() - count));
+            removed += count;
+            start = end;
         }
-        return null;
+        schedulePersist(context, encoded);
+        return result;
     }
 
-    public static synchronized Photo findPhotoById(String photoId) {
-        if (photoId == null || albumsCache == null) return null;
-        for (Album a : albumsCache) {
-            for (Photo p : a.getPhotos()) {
-                if (photoId.equals(p.getId())) {
-                    return p;
+    /**
+     * Deletes every listed photo from whichever album holds it, together with its image file.
+     * Each run of adjacent photos in an album is reported as one event.
+     */
+    public static synchronized BatchResult<String> removePhotos(Context context, List<String> photoIds) {
+        ensureLoaded(context);
+        BatchResult<String> result = new BatchResult<>();
+        Map<Album, List<Photo>> byAlbum = new IdentityHashMap<>();
+        List<Album> order = new ArrayList<>();
+        for (String id : photoIds) {
+            Photo p = locate(id);
+            Album a = p == null ? null : library.albumOf(id);
+            if (p == null) {
+                result.put(id, BatchResult.Status.NOT_FOUND);
+                continue;
+            }
+            if (result.getStatus(id) == null) {
+                List<Photo> photos = byAlbum.get(a);
+                if (photos == null) {
+                    photos = new ArrayList<>();
+                    byAlbum.put(a, photos);
+                    order.add(a);
                 }
+                photos.add(p);
             }
+            result.put(id, BatchResult.Status.OK);
         }
-        return null;
+        if (order.isEmpty()) return result;
+
+        countUnloadedBlobs();
+        boolean encoded = true;
+        List<String> removedIds = new ArrayList<>();
+        for (Album a : order) {
+            List<Photo> photos = byAlbum.get(a);
+            int albumPos = albumPosition(a);
+            int[] positions = sortByPosition(a, photos);
+            int removed = 0;
+            for (int start = 0; start < photos.size(); ) {
+                int end = runEnd(positions, start);
+                for (int i = start; i < end; i++) {
+                    Photo p = photos.get(i);
+                    blobs.release(p);
+                    removedIds.add(p.getId());
+                    library.removePhoto(a, p);
+                    tagIndex.removePhoto(p);
+                    encoded &= MutationJournal.append(context, MutationJournal.OP_REMOVE_PHOTO, "album", a.getName(),
+                            "photo", p.getId());
+                }
+                pendingEvents.add(LibraryEvent.photosRemoved(a.getName(), albumPos, positions[start] - removed, end - start));
+                removed += end - start;
+                start = end;
+            }
+        }
+        invalidateThumbnails(context, removedIds);
+        schedulePersist(context, encoded);
+        return result;
     }
 
-    private static String saveImageFromUri(Context context, Uri imageUri) {
-        try {
-            String imagesDirName = "images";
-            File imagesDir = new File(context.getFilesDir(), imagesDirName);
-            if (!imagesDir.exists()) {
-                imagesDir.mkdirs();
+    /**
+     * Sorts {@code photos} into album order and returns their positions in the album.
+     * Call before changing the album.
+     */
+    private static int[] sortByPosition(Album album, List<Photo> photos) {
+        photos.sort(Comparator.comparingInt(album::getPhotoIndex));
+        int[] positions = new int[photos.size()];
+        for (int i = 0; i < positions.length; i++) positions[i] = album.getPhotoIndex(photos.get(i));
+        return positions;
+    }
+
+    /** End (exclusive) of the run of consecutive positions starting at {@code start}. */
+    private static int runEnd(int[] positions, int start) {
+        int end = start + 1;
+        while (end < positions.length && positions[end] == positions[end - 1] + 1) end++;
+        return end;
+    }
+
+    /**
+     * Adds each tag to each listed photo, skipping tags a photo already has. A photo is OK if
+     * at least one tag was added and UNCHANGED if it already had all of them.
+     */
+    public static synchronized BatchResult<String> addTags(Context context, List<String> photoIds, List<Tag> tags) {
+        ensureLoaded(context);
+        BatchResult<String> result = new BatchResult<>();
+        boolean encoded = true;
+        int applied = 0;
+        for (String id : photoIds) {
+            Photo p = locate(id);
+            if (p == null) {
+                result.put(id, BatchResult.Status.NOT_FOUND);
+                continue;
+            }
+            String albumName = albumNameOf(p);
+            Set<Tag> added = new LinkedHashSet<>();
+            for (Tag tag : tags) {
+                if (tag == null || tag.getTagType() == null || p.findTag(tag) != null) continue;
+                added.add(tag);
+            }
+            p.addTags(added);
+            for (Tag tag : added) {
+                tag = p.findTag(tag);
+                tagIndex.addTag(p, tag);
+                encoded &= MutationJournal.append(context, MutationJournal.OP_ADD_TAG, "album", albumName, "photo", p.getId(),
+                        "type", tag.getTagType().getDisplayName(), "value", tag.getTagValue());
             }
+            if (!added.isEmpty()) photoChanged(p, false);
+            result.put(id, added.isEmpty() ? BatchResult.Status.UNCHANGED : BatchResult.Status.OK);
+            applied += added.size();
+        }
+        if (applied > 0) schedulePersist(context, encoded);
+        return result;
+    }
 
-            String fileName = UUID.randomUUID().toString() + ".jpg";
-            File outFile = new File(imagesDir, fileName);
+    /**
+     * Copies each image into app storage and adds them all to the album in one commit.
+     * The copies run before the lock is taken, so other DataStore calls are not held up by
+     * file I/O; a URI that cannot be read is reported as FAILED without affecting the rest.
+     */
+    public static BatchResult<Uri> importPhotos(Context context, String albumName, List<Uri> imageUris) {
+        Map<Uri, BlobStore.Staged> staged = new LinkedHashMap<>();
+        for (Uri uri : imageUris) {
+            if (staged.containsKey(uri)) continue;
+            staged.put(uri, stageImage(context, uri));
+        }
+        return commitImports(context, albumName, staged);
+    }
 
-            try (InputStream in = context.getContentResolver().openInputStream(imageUri);
-                 OutputStream out = new FileOutputStream(outFile)) {
-                if (in == null) {
-                    Log.e(TAG, "Could not open input stream for URI: " + imageUri);
-                    return null;
-                }
-                byte[] buf = new byte[8192];
-                int len;
-                while ((len = in.read(buf)) > 0) {
-                    out.write(buf, 0, len);
-                }
+    /**
+     * Registers staged images (null for a failed copy) with the album. Content the album
+     * already holds, including repeats within the batch, is reported UNCHANGED and its copy
+     * dropped; content stored for another album shares that file. If the album no longer
+     * exists the copies are deleted.
+     */
+    static synchronized BatchResult<Uri> commitImports(Context context, String albumName,
+                                                       Map<Uri, BlobStore.Staged> stagedImages) {
+        ensureLoaded(context);
+        BatchResult<Uri> result = new BatchResult<>();
+        Album a = contents(library.album(albumName));
+        Set<String> albumHashes = a == null ? null : contentHashes(a);
+        int firstPosition = a == null ? 0 : a.getPhotoCount();
+        boolean encoded = true;
+        int applied = 0;
+        for (Map.Entry<Uri, BlobStore.Staged> e : stagedImages.entrySet()) {
+            BlobStore.Staged staged = e.getValue();
+            if (staged == null) {
+                result.put(e.getKey(), BatchResult.Status.FAILED);
+                continue;
+            }
+            if (a == null) {
+                staged.discard();
+                result.put(e.getKey(), BatchResult.Status.NOT_FOUND);
+                continue;
             }
+            Photo p;
+            try {
+                p = addStaged(context, a, staged, albumHashes);
+            } catch (IOException ex) {
+                Log.e(TAG, "Failed to store image from URI: " + e.getKey(), ex);
+                result.put(e.getKey(), BatchResult.Status.FAILED);
+                continue;
+            }
+            if (p == null) {
+                result.put(e.getKey(), BatchResult.Status.UNCHANGED);
+                continue;
+            }
+            encoded &= appendAddPhoto(context, a, p);
+            result.put(e.getKey(), BatchResult.Status.OK);
+            applied++;
+        }
+        if (applied > 0) {
+            pendingEvents.add(LibraryEvent.photosAdded(a.getName(), albumPosition(a), firstPosition, applied));
+            schedulePersist(context, encoded);
+        }
+        return result;
+    }
 
-            Log.d(TAG, "Saved image to: " + outFile.getAbsolutePath());
-            return outFile.getAbsolutePath();
-        } catch (IOException e) {
+    public static Album findAlbumByName(String name) {
+        LibrarySnapshot s = snapshot;
+        return s == null ? null : s.findAlbum(name);
+    }
+
+    private static Photo findPhotoInAlbumById(Album album, String photoId) {
+        if (album == null) return null;
+        return library.photoIn(album, photoId);
+    }
+
+    public static Photo findPhotoById(String photoId) {
+        LibrarySnapshot s = snapshot;
+        return s == null ? null : s.findPhoto(photoId);
+    }
+
+    /** The album holding the photo, or null if no album does. */
+    public static Album findAlbumOfPhoto(String photoId) {
+        LibrarySnapshot s = snapshot;
+        return s == null ? null : s.findAlbumOf(photoId);
+    }
+
+    /** Copies and hashes the image into app storage, or returns null on failure. Safe off the lock. */
+    static BlobStore.Staged stageImage(Context context, Uri imageUri) {
+        try {
+            return BlobStore.stage(context, imageUri);
+        } catch (IOException | SecurityException e) {
             Log.e(TAG, "Failed to save image from URI: " + imageUri, e);
             return null;
         }
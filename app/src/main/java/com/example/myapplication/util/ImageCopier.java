@@ -0,0 +1,92 @@
+package com.example.myapplication.util;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * ImageCopier: copies an image from a content URI into app storage.
+ * When the provider hands out a seekable file descriptor the copy is a
+ * {@link FileChannel#transferTo} between the two files, which the kernel performs without
+ * moving the bytes through the Java heap. Pipes, sockets and providers without a
+ * descriptor fall back to a streamed copy with a 64 KB buffer.
+ * An optional digest is fed exactly the bytes written: from the stream buffer, or from a
+ * read-only mapping of the target file once the transfer is done.
+ */
+public class ImageCopier {
+    private static final String TAG = "ImageCopier";
+    static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Copies the content at {@code source} into {@code target}, replacing it, and returns the
+     * number of bytes copied. If {@code digest} is not null it is updated with exactly the
+     * bytes written to the target.
+     */
+    public static long copy(Context context, Uri source, File target, MessageDigest digest) throws IOException {
+        try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            ParcelFileDescriptor pfd = null;
+            try {
+                pfd = context.getContentResolver().openFileDescriptor(source, "r");
+            } catch (FileNotFoundException | SecurityException | IllegalArgumentException e) {
+                Log.d(TAG, "No file descriptor for " + source + ", streaming instead");
+            }
+            if (pfd != null) {
+                try (ParcelFileDescriptor.AutoCloseInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(pfd)) {
+                    long size = pfd.getStatSize();
+                    if (size >= 0) {
+                        long copied = transfer(in.getChannel(), out, size);
+                        // Hash the target: the provider's file may change while it is being copied.
+                        if (digest != null && copied > 0) {
+                            digest.update(out.map(FileChannel.MapMode.READ_ONLY, 0, copied));
+                        }
+                        return copied;
+                    }
+                    // Not a regular file (e.g. a pipe): the descriptor can only be read sequentially.
+                    return copyStream(in, Channels.newOutputStream(out), STREAM_BUFFER_SIZE, digest);
+                }
+            }
+            try (InputStream in = context.getContentResolver().openInputStream(source)) {
+                if (in == null) throw new FileNotFoundException("Could not open input stream for URI: " + source);
+                return copyStream(in, Channels.newOutputStream(out), STREAM_BUFFER_SIZE, digest);
+            }
+        }
+    }
+
+    /**
+     * Transfers {@code size} bytes from the start of {@code in}. Stops early if the source turns
+     * out to be shorter, e.g. if it was truncated while being copied.
+     */
+    static long transfer(FileChannel in, FileChannel out, long size) throws IOException {
+        long position = 0;
+        while (position < size) {
+            long n = in.transferTo(position, size - position, out);
+            if (n <= 0) break;
+            position += n;
+        }
+        return position;
+    }
+
+    static long copyStream(InputStream in, OutputStream out, int bufferSize, MessageDigest digest) throws IOException {
+        byte[] buf = new byte[bufferSize];
+        long total = 0;
+        int len;
+        while ((len = in.read(buf)) > 0) {
+            out.write(buf, 0, len);
+            if (digest != null) digest.update(buf, 0, len);
+            total += len;
+        }
+        return total;
+    }
+}
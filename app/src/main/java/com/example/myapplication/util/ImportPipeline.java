@@ -0,0 +1,106 @@
+package com.example.myapplication.util;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ImportPipeline: copies picked images into app storage on a small I/O pool and registers
+ * them with the album in one DataStore batch once every copy has finished or been skipped.
+ * Progress and the final result are delivered on the main thread. Cancelling skips copies
+ * that have not started; copies already in flight complete and are kept, so a cancelled or
+ * partly failed import never discards images that were copied successfully.
+ */
+public class ImportPipeline {
+    private static final String TAG = "ImportPipeline";
+
+    /** Copies are disk and provider bound, so a few threads are enough to overlap them. */
+    private static final int IO_THREADS = 3;
+
+    private static final ExecutorService io = Executors.newFixedThreadPool(IO_THREADS,
+            r -> new Thread(r, "ImportPipeline-io"));
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public interface Listener {
+        /** Called on the main thread after each image is copied, fails, or is skipped. */
+        void onProgress(int completed, int total);
+
+        /** Called on the main thread once the imported photos are in the album. */
+        void onFinished(BatchResult<Uri> result);
+    }
+
+    /** Handle for a running import. */
+    public static class Task {
+        private volatile boolean cancelled = false;
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    public static Task start(Context context, String albumName, List<Uri> imageUris, Listener listener) {
+        final Context appContext = context.getApplicationContext();
+        final List<Uri> uris = new ArrayList<>(new LinkedHashSet<>(imageUris));
+        final BlobStore.Staged[] staged = new BlobStore.Staged[uris.size()];
+        final boolean[] skipped = new boolean[uris.size()];
+        final AtomicInteger completed = new AtomicInteger();
+        final Task task = new Task();
+
+        if (uris.isEmpty()) {
+            mainHandler.post(() -> listener.onFinished(new BatchResult<>()));
+            return task;
+        }
+
+        for (int i = 0; i < uris.size(); i++) {
+            final int index = i;
+            io.execute(() -> {
+                if (task.isCancelled()) {
+                    skipped[index] = true;
+                } else {
+                    try {
+                        staged[index] = DataStore.stageImage(appContext, uris.get(index));
+                    } catch (RuntimeException e) {
+                        // Reported as FAILED; the batch must still be committed.
+                        Log.e(TAG, "Error importing " + uris.get(index), e);
+                    }
+                }
+                int done = completed.incrementAndGet();
+                mainHandler.post(() -> listener.onProgress(done, uris.size()));
+                if (done == uris.size()) {
+                    // Last one out commits; the AtomicInteger orders every earlier write before this read.
+                    commit(appContext, albumName, uris, staged, skipped, listener);
+                }
+            });
+        }
+        return task;
+    }
+
+    private static void commit(Context appContext, String albumName, List<Uri> uris, BlobStore.Staged[] staged,
+                               boolean[] skipped, Listener listener) {
+        Map<Uri, BlobStore.Staged> copied = new LinkedHashMap<>();
+        for (int i = 0; i < uris.size(); i++) {
+            if (!skipped[i]) copied.put(uris.get(i), staged[i]);
+        }
+        BatchResult<Uri> result = DataStore.commitImports(appContext, albumName, copied);
+        for (int i = 0; i < uris.size(); i++) {
+            if (skipped[i]) result.put(uris.get(i), BatchResult.Status.CANCELLED);
+        }
+        Log.d(TAG, "Imported " + result.getSuccessCount() + " of " + uris.size() + " into " + albumName);
+        mainHandler.post(() -> listener.onFinished(result));
+    }
+}
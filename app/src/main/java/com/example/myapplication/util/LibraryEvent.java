@@ -0,0 +1,103 @@
+package com.example.myapplication.util;
+
+/**
+ * LibraryEvent: one change made by DataStore, with the positions an adapter needs to
+ * notify only the affected rows. Positions refer to the list as it is just before the event,
+ * so the events of a batch are applied in order. Album positions index
+ * {@link LibrarySnapshot#getAlbums()}, photo positions index the album's photo list.
+ * Fields that do not apply to a type are null or -1.
+ */
+public final class LibraryEvent {
+
+    public enum Type {
+        ALBUM_ADDED,
+        ALBUM_REMOVED,
+        /** {@link #album} is the old name and {@link #toAlbum} the new one. */
+        ALBUM_RENAMED,
+        COVER_CHANGED,
+        PHOTOS_ADDED,
+        PHOTOS_REMOVED,
+        /** {@link #count} photos leave {@link #album} at {@link #position} and are inserted into {@link #toAlbum} at {@link #toPosition}. */
+        PHOTOS_MOVED,
+        PHOTO_RENAMED,
+        TAGS_CHANGED
+    }
+
+    public final Type type;
+    public final String album;
+    public final int albumPosition;
+    public final int position;
+    public final int count;
+    public final String toAlbum;
+    public final int toAlbumPosition;
+    public final int toPosition;
+    public final String photoId;
+
+    private LibraryEvent(Type type, String album, int albumPosition, int position, int count,
+                         String toAlbum, int toAlbumPosition, int toPosition, String photoId) {
+        this.type = type;
+        this.album = album;
+        this.albumPosition = albumPosition;
+        this.position = position;
+        this.count = count;
+        this.toAlbum = toAlbum;
+        this.toAlbumPosition = toAlbumPosition;
+        this.toPosition = toPosition;
+        this.photoId = photoId;
+    }
+
+    static LibraryEvent albumAdded(String album, int albumPosition) {
+        return new LibraryEvent(Type.ALBUM_ADDED, album, albumPosition, -1, 0, null, -1, -1, null);
+    }
+
+    static LibraryEvent albumRemoved(String album, int albumPosition) {
+        return new LibraryEvent(Type.ALBUM_REMOVED, album, albumPosition, -1, 0, null, -1, -1, null);
+    }
+
+    static LibraryEvent albumRenamed(String oldName, String newName, int albumPosition) {
+        return new LibraryEvent(Type.ALBUM_RENAMED, oldName, albumPosition, -1, 0, newName, albumPosition, -1, null);
+    }
+
+    static LibraryEvent coverChanged(String album, int albumPosition) {
+        return new LibraryEvent(Type.COVER_CHANGED, album, albumPosition, -1, 0, null, -1, -1, null);
+    }
+
+    static LibraryEvent photosAdded(String album, int albumPosition, int position, int count) {
+        return new LibraryEvent(Type.PHOTOS_ADDED, album, albumPosition, position, count, null, -1, -1, null);
+    }
+
+    static LibraryEvent photosRemoved(String album, int albumPosition, int position, int count) {
+        return new LibraryEvent(Type.PHOTOS_REMOVED, album, albumPosition, position, count, null, -1, -1, null);
+    }
+
+    static LibraryEvent photosMoved(String album, int albumPosition, int position, int count,
+                                    String toAlbum, int toAlbumPosition, int toPosition) {
+        return new LibraryEvent(Type.PHOTOS_MOVED, album, albumPosition, position, count,
+                toAlbum, toAlbumPosition, toPosition, null);
+    }
+
+    static LibraryEvent photoRenamed(String album, int albumPosition, int position, String photoId) {
+        return new LibraryEvent(Type.PHOTO_RENAMED, album, albumPosition, position, 1, null, -1, -1, photoId);
+    }
+
+    static LibraryEvent tagsChanged(String album, int albumPosition, int position, String photoId) {
+        return new LibraryEvent(Type.TAGS_CHANGED, album, albumPosition, position, 1, null, -1, -1, photoId);
+    }
+
+    /** True if this event is about the album with this name (names are case-insensitive). */
+    public boolean isFor(String albumName) {
+        return album != null && album.equalsIgnoreCase(albumName);
+    }
+
+    /** True if this event moves photos into the album with this name. */
+    public boolean isInto(String albumName) {
+        return type == Type.PHOTOS_MOVED && toAlbum != null && toAlbum.equalsIgnoreCase(albumName);
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + album + "@" + albumPosition + " [" + position + "+" + count + "]"
+                + (toAlbum == null ? "" : " -> " + toAlbum + "@" + toAlbumPosition + " [" + toPosition + "]")
+                + (photoId == null ? "" : " " + photoId);
+    }
+}
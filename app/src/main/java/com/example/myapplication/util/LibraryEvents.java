@@ -0,0 +1,49 @@
+package com.example.myapplication.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * LibraryEvents: delivers DataStore's changes to the UI. Every snapshot DataStore publishes
+ * is posted to the main thread together with the events that produced it, in publish order,
+ * so a listener that shows snapshot version N can apply the batch for N + 1 row by row.
+ * A listener that finds a gap in versions (it registered late, or was busy) should rebind
+ * from the snapshot instead.
+ */
+public class LibraryEvents {
+    private static final String TAG = "LibraryEvents";
+
+    public interface Listener {
+        /** Called on the main thread with a newly published snapshot and the events since the previous one. */
+        void onLibraryChanged(LibrarySnapshot snapshot, List<LibraryEvent> events);
+    }
+
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static void register(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static void unregister(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    static void post(LibrarySnapshot snapshot, List<LibraryEvent> events) {
+        final List<LibraryEvent> batch = Collections.unmodifiableList(events);
+        mainHandler.post(() -> {
+            for (Listener l : listeners) {
+                try {
+                    l.onLibraryChanged(snapshot, batch);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Listener failed on version " + snapshot.getVersion(), e);
+                }
+            }
+        });
+    }
+}
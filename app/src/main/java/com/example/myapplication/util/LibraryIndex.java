@@ -0,0 +1,140 @@
+package com.example.myapplication.util;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LibraryIndex: hash lookups from normalized album name to Album and from photo ID to the
+ * photo and the album holding it. DataStore routes every structural mutation through here so
+ * the maps and the album lists change together; lookups no longer scan the library.
+ * Not thread-safe on its own; DataStore only touches it while holding its lock.
+ */
+public class LibraryIndex {
+
+    private static class Entry {
+        final Photo photo;
+        Album album;
+
+        Entry(Photo photo, Album album) {
+            this.photo = photo;
+            this.album = album;
+        }
+    }
+
+    private final Map<String, Album> albumsByName = new HashMap<>();
+    private final Map<String, Entry> photosById = new HashMap<>();
+
+    /**
+     * Lookup key for an album name. Two names share a key exactly when
+     * {@link String#equalsIgnoreCase} holds, so surrounding spaces still tell albums apart.
+     */
+    public static String normalize(String albumName) {
+        if (albumName == null) return "";
+        StringBuilder key = new StringBuilder(albumName.length());
+        albumName.codePoints()
+                .forEach(c -> key.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c))));
+        return key.toString();
+    }
+
+    /**
+     * Re-indexes a freshly loaded library. The first album or photo wins on duplicates, as the
+     * old scans did. Photos of unloaded albums are left out until {@link #indexPhotos}.
+     */
+    public void rebuild(List<Album> albums) {
+        albumsByName.clear();
+        photosById.clear();
+        if (albums == null) return;
+        for (Album a : albums) {
+            albumsByName.putIfAbsent(normalize(a.getName()), a);
+            if (a.isLoaded()) indexPhotos(a);
+        }
+    }
+
+    /** Adds the photos of an album that was loaded after {@link #rebuild}. */
+    public void indexPhotos(Album album) {
+        for (Photo p : album.getPhotos()) {
+            photosById.putIfAbsent(p.getId(), new Entry(p, album));
+        }
+    }
+
+    public Album album(String name) {
+        if (name == null) return null;
+        return albumsByName.get(normalize(name));
+    }
+
+    public Photo photo(String photoId) {
+        Entry e = photoId == null ? null : photosById.get(photoId);
+        return e == null ? null : e.photo;
+    }
+
+    /** The album currently holding the photo, or null if the ID is unknown. */
+    public Album albumOf(String photoId) {
+        Entry e = photoId == null ? null : photosById.get(photoId);
+        return e == null ? null : e.album;
+    }
+
+    /** The photo with this ID if it lives in {@code album}. */
+    public Photo photoIn(Album album, String photoId) {
+        Entry e = photoId == null ? null : photosById.get(photoId);
+        return e == null || e.album != album ? null : e.photo;
+    }
+
+    public int albumCount() {
+        return albumsByName.size();
+    }
+
+    public int photoCount() {
+        return photosById.size();
+    }
+
+    public void addAlbum(List<Album> albums, Album album) {
+        albums.add(album);
+        albumsByName.put(normalize(album.getName()), album);
+        for (Photo p : album.getPhotos()) {
+            photosById.put(p.getId(), new Entry(p, album));
+        }
+    }
+
+    public void removeAlbum(List<Album> albums, Album album) {
+        albums.remove(album);
+        albumsByName.remove(normalize(album.getName()));
+        if (!album.isLoaded()) return;
+        for (Photo p : album.getPhotos()) {
+            Entry e = photosById.get(p.getId());
+            if (e != null && e.album == album) photosById.remove(p.getId());
+        }
+    }
+
+    public void renameAlbum(Album album, String newName) {
+        String oldKey = normalize(album.getName());
+        if (albumsByName.get(oldKey) == album) albumsByName.remove(oldKey);
+        album.setName(newName);
+        albumsByName.put(normalize(newName), album);
+    }
+
+    public void addPhoto(Album album, Photo photo) {
+        album.addPhoto(photo);
+        photosById.put(photo.getId(), new Entry(photo, album));
+    }
+
+    public void removePhoto(Album album, Photo photo) {
+        album.removePhoto(photo);
+        Entry e = photosById.get(photo.getId());
+        if (e != null && e.album == album) photosById.remove(photo.getId());
+    }
+
+    public void movePhoto(Photo photo, Album from, Album to) {
+        from.removePhoto(photo);
+        to.addPhoto(photo);
+        Entry e = photosById.get(photo.getId());
+        if (e == null) {
+            photosById.put(photo.getId(), new Entry(photo, to));
+        } else {
+            e.album = to;
+        }
+    }
+}
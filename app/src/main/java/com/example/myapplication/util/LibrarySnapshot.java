@@ -0,0 +1,202 @@
+package com.example.myapplication.util;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LibrarySnapshot: immutable view of the library at one version, published by DataStore
+ * after every change and read without locking. Albums are read-only copies that share the
+ * live album's immutable photo list, so a reader's albums and their photo lists never change
+ * under it. The Photo objects are shared too and are not versioned: a rename, hash or tag
+ * change made after this snapshot shows through it (each photo's fields and tag set are
+ * still read consistently, see {@link Photo}). Publishing is copy-on-write with structural sharing:
+ * the previous snapshot's copy of every unchanged album is reused, and the photo ID index
+ * is split into shards of which only those holding added or removed photos are copied.
+ * Albums whose photos are not loaded yet are in the snapshot with their names and counts,
+ * but their photos are only found by ID once DataStore has loaded them.
+ */
+public final class LibrarySnapshot {
+    private static final int SHARDS = 64;
+
+    /** A frozen album, remembered against the live album it copies. */
+    private static final class Entry {
+        final Album frozen;
+        final int modCount;
+        /** Whether the album's photos were loaded, and so are in the photo index. */
+        final boolean indexed;
+
+        Entry(Album live) {
+            this.frozen = new Album(live);
+            this.modCount = live.getModCount();
+            this.indexed = live.isLoaded();
+        }
+    }
+
+    /** Where a photo is: keyed by the live album, which keeps its identity across versions. */
+    private static final class Location {
+        final Photo photo;
+        final Album live;
+
+        Location(Photo photo, Album live) {
+            this.photo = photo;
+            this.live = live;
+        }
+    }
+
+    static final LibrarySnapshot EMPTY = new LibrarySnapshot(0, Collections.emptyList(),
+            Collections.emptyMap(), new IdentityHashMap<>(), new IdentityHashMap<>(), emptyShards());
+
+    private final long version;
+    private final List<Album> albums;
+    private final Map<String, Entry> byName;
+    private final Map<Album, Entry> byLive;
+    /** Index of each live album in {@link #albums}. */
+    private final Map<Album, Integer> albumIndex;
+    private final Map<String, Location>[] photoShards;
+
+    private LibrarySnapshot(long version, List<Album> albums, Map<String, Entry> byName, Map<Album, Entry> byLive,
+                            Map<Album, Integer> albumIndex, Map<String, Location>[] photoShards) {
+        this.version = version;
+        this.albums = albums;
+        this.byName = byName;
+        this.byLive = byLive;
+        this.albumIndex = albumIndex;
+        this.photoShards = photoShards;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Location>[] emptyShards() {
+        Map<String, Location>[] shards = (Map<String, Location>[]) new Map<?, ?>[SHARDS];
+        for (int i = 0; i < SHARDS; i++) shards[i] = Collections.emptyMap();
+        return shards;
+    }
+
+    /** Snapshot of {@code liveAlbums}, sharing everything that has not changed since this one. */
+    LibrarySnapshot next(List<Album> liveAlbums) {
+        List<Album> frozen = new ArrayList<>(liveAlbums.size());
+        Map<String, Entry> nextByName = new HashMap<>(liveAlbums.size() * 2);
+        Map<Album, Entry> nextByLive = new IdentityHashMap<>(liveAlbums.size());
+        Map<Album, Integer> nextAlbumIndex = new IdentityHashMap<>(liveAlbums.size());
+        ShardWriter shards = new ShardWriter(photoShards);
+        List<Album> changed = new ArrayList<>();
+        for (Album live : liveAlbums) {
+            Entry e = byLive.get(live);
+            if (e == null || e.modCount != live.getModCount()) {
+                changed.add(live);
+                e = new Entry(live);
+            }
+            frozen.add(e.frozen);
+            nextByName.putIfAbsent(LibraryIndex.normalize(live.getName()), e);
+            nextByLive.put(live, e);
+            nextAlbumIndex.put(live, nextAlbumIndex.size());
+        }
+        // Removals first, so a photo moved between two changed albums ends up in its new one.
+        for (Map.Entry<Album, Entry> old : byLive.entrySet()) {
+            Album live = old.getKey();
+            boolean gone = !nextByLive.containsKey(live);
+            if (!old.getValue().indexed || (!gone && old.getValue().modCount == live.getModCount())) continue;
+            for (Photo p : old.getValue().frozen.getPhotos()) {
+                if (gone || !live.containsPhoto(p)) shards.remove(p.getId(), live);
+            }
+        }
+        for (Album live : changed) {
+            if (!live.isLoaded()) continue;
+            Entry old = byLive.get(live);
+            boolean oldIndexed = old != null && old.indexed;
+            for (Photo p : live.getPhotos()) {
+                if (!oldIndexed || !old.frozen.containsPhoto(p)) shards.put(p.getId(), new Location(p, live));
+            }
+        }
+        return new LibrarySnapshot(version + 1, Collections.unmodifiableList(frozen), nextByName, nextByLive,
+                nextAlbumIndex, shards.finish());
+    }
+
+    /** Increases with every published change. */
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Album> getAlbums() {
+        return albums;
+    }
+
+    public Album findAlbum(String name) {
+        if (name == null) return null;
+        Entry e = byName.get(LibraryIndex.normalize(name));
+        return e == null ? null : e.frozen;
+    }
+
+    public Photo findPhoto(String photoId) {
+        Location l = locate(photoId);
+        return l == null ? null : l.photo;
+    }
+
+    /** The album holding the photo, or null if no album does. */
+    public Album findAlbumOf(String photoId) {
+        Location l = locate(photoId);
+        Entry e = l == null ? null : byLive.get(l.live);
+        return e == null ? null : e.frozen;
+    }
+
+    /**
+     * Where the photo is in the library: its album's index in the high 32 bits and its index
+     * in that album in the low ones, so sorting by it gives album order. Long.MAX_VALUE for a
+     * photo not in this snapshot.
+     */
+    public long positionOf(Photo photo) {
+        Location l = photo == null ? null : locate(photo.getId());
+        if (l == null || l.photo != photo) return Long.MAX_VALUE;
+        Entry e = byLive.get(l.live);
+        int position = e == null ? -1 : e.frozen.getPhotoIndex(photo);
+        if (position < 0) return Long.MAX_VALUE;
+        return ((long) albumIndex.get(l.live) << 32) | position;
+    }
+
+    private Location locate(String photoId) {
+        if (photoId == null) return null;
+        return photoShards[shardOf(photoId)].get(photoId);
+    }
+
+    private static int shardOf(String photoId) {
+        return (photoId.hashCode() & 0x7fffffff) % SHARDS;
+    }
+
+    /** Copies each shard at most once, the first time it is written. */
+    private static final class ShardWriter {
+        private final Map<String, Location>[] shards;
+        private final boolean[] copied = new boolean[SHARDS];
+
+        ShardWriter(Map<String, Location>[] previous) {
+            this.shards = previous.clone();
+        }
+
+        void put(String photoId, Location location) {
+            writable(shardOf(photoId)).put(photoId, location);
+        }
+
+        void remove(String photoId, Album live) {
+            int shard = shardOf(photoId);
+            Location current = shards[shard].get(photoId);
+            if (current != null && current.live == live) writable(shard).remove(photoId);
+        }
+
+        private Map<String, Location> writable(int shard) {
+            if (!copied[shard]) {
+                shards[shard] = new HashMap<>(shards[shard]);
+                copied[shard] = true;
+            }
+            return shards[shard];
+        }
+
+        Map<String, Location>[] finish() {
+            return shards;
+        }
+    }
+}
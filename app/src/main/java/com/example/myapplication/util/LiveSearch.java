@@ -0,0 +1,198 @@
+package com.example.myapplication.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.myapplication.model.Photo;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LiveSearch: runs a search as the user types. Input is debounced, queries run on a single
+ * background thread, and a query superseded before it finishes is cancelled and never
+ * delivered. When the new query only narrows the previous one (see {@link TagQuery#refine})
+ * the previous result is filtered instead of evaluating every term again. Results reach the
+ * main thread as the list of insert and remove ranges that turns the previous result into
+ * the new one, so the adapter only touches the rows that changed.
+ */
+public class LiveSearch {
+    private static final String TAG = "LiveSearch";
+    public static final long DEBOUNCE_MS = 250;
+
+    /** One contiguous run of inserted or removed rows, to be applied in list order. */
+    public static class Change {
+        public final boolean insert;
+        public final int position;
+        public final int count;
+
+        Change(boolean insert, int position, int count) {
+            this.insert = insert;
+            this.position = position;
+            this.count = count;
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called on the main thread with the new results. If {@code changes} is null the list
+         * must be rebound in full; otherwise applying them in order to the previously
+         * delivered list yields {@code photos}.
+         */
+        void onResults(List<Photo> photos, List<Change> changes);
+
+        /** Called on the main thread when the query text cannot be parsed. */
+        void onError(String message);
+    }
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> new Thread(r, "LiveSearch"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final TagIndex index;
+    private final Listener listener;
+    private final AtomicInteger generation = new AtomicInteger();
+    private Runnable pendingSubmit;
+    private Future<?> running;
+
+    // Last delivered result; only touched on the worker thread.
+    private TagQuery lastQuery;
+    private BitSet lastResult = new BitSet();
+    private List<Photo> lastPhotos = Collections.emptyList();
+    private long lastVersion = -1;
+
+    public LiveSearch(TagIndex index, Listener listener) {
+        this.index = index;
+        this.listener = listener;
+    }
+
+    /**
+     * Schedules a search once the input has been quiet for {@link #DEBOUNCE_MS}. A null
+     * query clears the results. Call on the main thread.
+     */
+    public void submit(TagQuery query) {
+        if (pendingSubmit != null) mainHandler.removeCallbacks(pendingSubmit);
+        pendingSubmit = () -> {
+            pendingSubmit = null;
+            run(query);
+        };
+        mainHandler.postDelayed(pendingSubmit, DEBOUNCE_MS);
+    }
+
+    /** Like {@link #submit(TagQuery)} for query text, reporting parse errors to the listener. */
+    public void submit(String queryText) {
+        TagQuery query;
+        try {
+            query = queryText == null || queryText.trim().isEmpty() ? null : TagQuery.parse(queryText);
+        } catch (IllegalArgumentException e) {
+            // Usually a query still being typed; keep showing the last results.
+            cancelPending();
+            listener.onError(e.getMessage());
+            return;
+        }
+        submit(query);
+    }
+
+    /** Runs the search now, skipping the debounce. Call on the main thread. */
+    public void run(TagQuery query) {
+        cancelPending();
+        final int mine = generation.incrementAndGet();
+        if (running != null) running.cancel(true);
+        running = worker.submit(() -> evaluate(query, mine));
+    }
+
+    /** Cancels pending and running searches; no further results are delivered. */
+    public void shutdown() {
+        cancelPending();
+        generation.incrementAndGet();
+        worker.shutdownNow();
+    }
+
+    private void cancelPending() {
+        if (pendingSubmit != null) {
+            mainHandler.removeCallbacks(pendingSubmit);
+            pendingSubmit = null;
+        }
+    }
+
+    private void evaluate(TagQuery query, int mine) {
+        try {
+            long version = index.version();
+            BitSet result = null;
+            if (query == null) {
+                result = new BitSet();
+            } else if (lastQuery != null && version == lastVersion) {
+                result = query.refine(lastQuery, lastResult, index);
+            }
+            if (result == null && query != null) result = query.evaluate(index);
+            if (generation.get() != mine || Thread.currentThread().isInterrupted()) return;
+
+            List<Photo> photos = index.photos(result);
+            // If the index changed while this ran, the result may mix two states: rebind in full,
+            // and do not let the next query refine it.
+            boolean stable = index.version() == version;
+            List<Change> changes = stable ? diff(lastPhotos, photos) : null;
+            if (generation.get() != mine) return;
+
+            lastQuery = query;
+            lastResult = result;
+            lastPhotos = photos;
+            lastVersion = stable ? version : -1;
+            // Once state has advanced every result must be applied, in order, for diffs to chain.
+            mainHandler.post(() -> listener.onResults(photos, changes));
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error running search", e);
+        }
+    }
+
+    /**
+     * Insert and remove ranges that turn the rows {@code before} into the rows {@code after},
+     * found in one merge pass over the two lists. Null if the photos in both are not in the
+     * same relative order (e.g. one was moved to another album), which needs a full rebind.
+     */
+    static List<Change> diff(List<Photo> before, List<Photo> after) {
+        Set<Photo> inBefore = Collections.newSetFromMap(new IdentityHashMap<>(before.size()));
+        inBefore.addAll(before);
+        Set<Photo> inAfter = Collections.newSetFromMap(new IdentityHashMap<>(after.size()));
+        inAfter.addAll(after);
+        List<Change> changes = new ArrayList<>();
+        int position = 0;
+        int b = 0;
+        int a = 0;
+        Change open = null;
+        while (b < before.size() || a < after.size()) {
+            boolean is;
+            if (b < before.size() && !inAfter.contains(before.get(b))) {
+                is = false;
+                b++;
+            } else if (a < after.size() && !inBefore.contains(after.get(a))) {
+                is = true;
+                a++;
+            } else if (b < before.size() && a < after.size() && before.get(b) == after.get(a)) {
+                open = null;
+                position++;
+                b++;
+                a++;
+                continue;
+            } else {
+                return null;
+            }
+            if (open != null && open.insert == is && open.position + (is ? open.count : 0) == position) {
+                open = new Change(is, open.position, open.count + 1);
+                changes.set(changes.size() - 1, open);
+            } else {
+                open = new Change(is, position, 1);
+                changes.add(open);
+            }
+            if (is) position++;
+        }
+        return changes;
+    }
+}
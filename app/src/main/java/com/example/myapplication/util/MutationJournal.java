@@ -0,0 +1,460 @@
+package com.example.myapplication.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+import com.example.myapplication.model.Tag;
+import com.example.myapplication.model.TagType;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * MutationJournal: append-only log of small DataStore mutations, one JSON object per line.
+ * Records are replayed on top of the last albums.json snapshot when the library is loaded,
+ * so a single edit costs one short append instead of a full snapshot rewrite. Records are
+ * queued in memory and written in batches by DataStore's {@link WriteBehindPersister}.
+ * Replay is idempotent: records that no longer apply (e.g. after a crash between writing a
+ * compacted snapshot and discarding the rotated journal) are skipped. Every photo record
+ * names its album, so replay only loads the photos of albums the journal touches.
+ */
+public class MutationJournal {
+    private static final String TAG = "MutationJournal";
+    private static final String JOURNAL_FILENAME = "albums.journal";
+    private static final String ROTATED_FILENAME = "albums.journal.old";
+    private static final String BACKUP_FILENAME = "albums.journal.bak";
+
+    /** Journal size after which DataStore compacts it into a new snapshot. */
+    public static final long COMPACT_THRESHOLD_BYTES = 256 * 1024;
+
+    public static final String OP_CREATE_ALBUM = "createAlbum";
+    public static final String OP_DELETE_ALBUM = "deleteAlbum";
+    public static final String OP_RENAME_ALBUM = "renameAlbum";
+    public static final String OP_SET_COVER = "setCover";
+    public static final String OP_ADD_PHOTO = "addPhoto";
+    public static final String OP_REMOVE_PHOTO = "removePhoto";
+    public static final String OP_MOVE_PHOTO = "movePhoto";
+    public static final String OP_RENAME_PHOTO = "renamePhoto";
+    public static final String OP_ADD_TAG = "addTag";
+    public static final String OP_REMOVE_TAG = "removeTag";
+
+    private static long journalBytes = -1;
+    private static ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /**
+     * Queues one record built from alternating key/value pairs. Nothing is written here; the
+     * persister thread writes queued records in batches via {@link #drainPending} and
+     * {@link #write}. Returns false if the record could not be encoded.
+     */
+    public static synchronized boolean append(Context context, String op, String... keyValues) {
+        try {
+            JSONObject rec = new JSONObject();
+            rec.put("op", op);
+            for (int i = 0; i + 1 < keyValues.length; i += 2) {
+                rec.put(keyValues[i], keyValues[i + 1]);
+            }
+            byte[] line = (rec.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+            pending.write(line, 0, line.length);
+            journalBytes = size(context) + line.length;
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error encoding journal record: " + op, e);
+            return false;
+        }
+    }
+
+    /** Drops queued records and the cached size, e.g. before switching to another files dir. */
+    static synchronized void reset() {
+        pending = new ByteArrayOutputStream();
+        journalBytes = -1;
+    }
+
+    /** Journal size in bytes including queued records, not counting a rotated journal. */
+    public static synchronized long size(Context context) {
+        if (journalBytes < 0) journalBytes = journalFile(context).length();
+        return journalBytes;
+    }
+
+    /** Takes every queued record, oldest first. */
+    public static synchronized byte[] drainPending() {
+        byte[] records = pending.toByteArray();
+        pending = new ByteArrayOutputStream();
+        return records;
+    }
+
+    /**
+     * Takes every queued record for a compaction and restarts the size count, since everything
+     * up to this point is about to be folded into a snapshot.
+     */
+    public static synchronized byte[] drainForCompaction() {
+        journalBytes = 0;
+        return drainPending();
+    }
+
+    /** Puts records whose write failed back in front of anything queued since. */
+    public static synchronized void requeue(byte[] records) {
+        if (records.length == 0) return;
+        ByteArrayOutputStream merged = new ByteArrayOutputStream(records.length + pending.size());
+        merged.write(records, 0, records.length);
+        byte[] newer = pending.toByteArray();
+        merged.write(newer, 0, newer.length);
+        pending = merged;
+        journalBytes = Math.max(journalBytes, 0) + records.length;
+    }
+
+    public static synchronized boolean hasPending() {
+        return pending.size() > 0;
+    }
+
+    /** Appends records to the live journal and fsyncs. Persister thread only. */
+    public static void write(Context context, byte[] records) throws IOException {
+        if (records.length == 0) return;
+        try (FileOutputStream fos = new FileOutputStream(journalFile(context), true)) {
+            fos.write(records);
+            fos.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    /**
+     * Moves the live journal aside so new records start a fresh file while a snapshot
+     * covering everything up to this point is written. If an earlier rotation was never
+     * discarded (its snapshot write failed), the live records are appended to it instead.
+     * Persister thread only.
+     */
+    public static boolean rotate(Context context) {
+        File rotated = rotatedFile(context);
+        File live = journalFile(context);
+        if (!live.exists()) {
+            return true;
+        }
+        try {
+            if (rotated.exists()) {
+                try (FileInputStream in = new FileInputStream(live);
+                     FileOutputStream out = new FileOutputStream(rotated, true)) {
+                    byte[] buf = new byte[8192];
+                    int len;
+                    while ((len = in.read(buf)) > 0) {
+                        out.write(buf, 0, len);
+                    }
+                }
+                if (!live.delete()) throw new IOException("Could not delete " + live);
+            } else if (!live.renameTo(rotated)) {
+                throw new IOException("Could not rename " + live);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not rotate journal", e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Called once the snapshot covering the rotated journal is on disk. The rotated journal is
+     * kept as albums.journal.bak: it turns the backup snapshot into the current one, so a load
+     * that has to fall back to the backup can still reach the latest state. Persister thread only.
+     */
+    public static void retireRotated(Context context) {
+        File rotated = rotatedFile(context);
+        if (!rotated.exists()) return;
+        File backup = backupFile(context);
+        if (backup.exists() && !backup.delete()) {
+            Log.w(TAG, "Could not delete journal backup " + backup.getAbsolutePath());
+        }
+        if (!rotated.renameTo(backup)) {
+            Log.w(TAG, "Could not retire rotated journal " + rotated.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Applies the rotated journal (if any) and then the live journal to the given albums.
+     * When the albums came from the backup snapshot, the journal backup is applied first.
+     */
+    public static synchronized void replay(Context context, List<Album> albums, boolean fromBackupSnapshot) {
+        List<JSONObject> records = new ArrayList<>();
+        if (fromBackupSnapshot) readRecords(backupFile(context), records);
+        readRecords(rotatedFile(context), records);
+        readRecords(journalFile(context), records);
+        loadTouchedAlbums(albums, records);
+        int applied = 0;
+        try {
+            for (int i = 0; i < records.size(); ) {
+                int end = tagRunEnd(records, i);
+                if (end > i + 1) {
+                    applied += addTags(albums, records.subList(i, end));
+                    i = end;
+                } else if (apply(albums, records.get(i++))) {
+                    applied++;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error replaying journal record " + applied, e);
+        }
+        if (applied > 0) Log.d(TAG, "Replayed " + applied + " journal records");
+    }
+
+    /**
+     * Loads the photos of every album the records touch, following album names through
+     * creates, renames and deletes in record order, and leaves the rest unloaded. Records
+     * written before photo records named their album could touch any album, so one of those
+     * loads them all.
+     */
+    private static void loadTouchedAlbums(List<Album> albums, List<JSONObject> records) {
+        Map<String, Album> byName = new HashMap<>();
+        for (Album a : albums) byName.putIfAbsent(key(a.getName()), a);
+        Set<Album> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (JSONObject rec : records) {
+            String name = rec.optString("album", null);
+            Album album = name == null ? null : byName.get(key(name));
+            switch (rec.optString("op", "")) {
+                case OP_CREATE_ALBUM:
+                    if (name != null && !name.isEmpty() && album == null) byName.put(key(name), new Album(name));
+                    break;
+                case OP_DELETE_ALBUM:
+                    if (album != null) byName.remove(key(name));
+                    break;
+                case OP_RENAME_ALBUM: {
+                    String newName = rec.optString("to", "");
+                    Album existing = byName.get(key(newName));
+                    if (album != null && !newName.isEmpty() && (existing == null || existing == album)) {
+                        byName.remove(key(name));
+                        byName.put(key(newName), album);
+                    }
+                    break;
+                }
+                case OP_MOVE_PHOTO:
+                    if (album != null) touched.add(album);
+                    Album dst = byName.get(key(rec.optString("to", "")));
+                    if (dst != null) touched.add(dst);
+                    break;
+                case OP_RENAME_PHOTO:
+                case OP_ADD_TAG:
+                case OP_REMOVE_TAG:
+                    if (name == null) {
+                        for (Album a : albums) a.loadPhotos();
+                        return;
+                    }
+                    if (album != null) touched.add(album);
+                    break;
+                case OP_ADD_PHOTO:
+                case OP_REMOVE_PHOTO:
+                    if (album != null) touched.add(album);
+                    break;
+                default:
+                    break;
+            }
+        }
+        for (Album a : touched) a.loadPhotos();
+    }
+
+    private static String key(String albumName) {
+        return albumName.toLowerCase(Locale.ROOT);
+    }
+
+    private static void readRecords(File f, List<JSONObject> records) {
+        if (!f.exists()) return;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                JSONObject rec;
+                try {
+                    rec = new JSONObject(line);
+                } catch (Exception e) {
+                    // A torn final line from an interrupted append; nothing after it is valid.
+                    Log.w(TAG, "Stopping replay at malformed record in " + f.getName());
+                    break;
+                }
+                records.add(rec);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading journal " + f.getAbsolutePath(), e);
+        }
+    }
+
+    private static boolean apply(List<Album> albums, JSONObject rec) {
+        String op = rec.optString("op", "");
+        Album album = findAlbum(albums, rec.optString("album", null));
+        switch (op) {
+            case OP_CREATE_ALBUM: {
+                String name = rec.optString("album", "");
+                if (name.isEmpty() || album != null) return false;
+                albums.add(new Album(name));
+                return true;
+            }
+            case OP_DELETE_ALBUM:
+                return album != null && albums.remove(album);
+            case OP_RENAME_ALBUM: {
+                String newName = rec.optString("to", "");
+                Album existing = findAlbum(albums, newName);
+                if (album == null || newName.isEmpty() || (existing != null && existing != album)) {
+                    return false;
+                }
+                album.setName(newName);
+                return true;
+            }
+            case OP_SET_COVER: {
+                if (album == null) return false;
+                String photoId = rec.optString("photo", "");
+                album.setCoverPhotoId(photoId.isEmpty() ? null : photoId);
+                return true;
+            }
+            case OP_ADD_PHOTO: {
+                String id = rec.optString("photo", null);
+                // An album still unloaded here has unreadable photos and cannot take new ones.
+                if (album == null || !album.isLoaded() || id == null || findPhoto(albums, id) != null) return false;
+                Photo p = new Photo(rec.optString("path", null), rec.optString("filename", null));
+                p.setId(id);
+                p.setContentHash(rec.optString("hash", null));
+                album.addPhoto(p);
+                return true;
+            }
+            case OP_REMOVE_PHOTO: {
+                Photo p = findPhotoIn(album, rec.optString("photo", null));
+                if (p == null) return false;
+                album.removePhoto(p);
+                return true;
+            }
+            case OP_MOVE_PHOTO: {
+                Album dst = findAlbum(albums, rec.optString("to", null));
+                Photo p = findPhotoIn(album, rec.optString("photo", null));
+                if (p == null || dst == null) return false;
+                album.removePhoto(p);
+                dst.addPhoto(p);
+                return true;
+            }
+            case OP_RENAME_PHOTO: {
+                Photo p = findPhoto(albums, album, rec);
+                if (p == null) return false;
+                p.setFilename(rec.optString("filename", p.getFilename()));
+                return true;
+            }
+            case OP_ADD_TAG: {
+                Photo p = findPhoto(albums, album, rec);
+                if (p == null) return false;
+                Tag tag = new Tag(rec.optString("type", TagType.PERSON.getDisplayName()),
+                        rec.optString("value", ""));
+                if (p.hasTag(tag)) return false;
+                p.addTag(tag);
+                return true;
+            }
+            case OP_REMOVE_TAG: {
+                Photo p = findPhoto(albums, album, rec);
+                if (p == null) return false;
+                Tag tag = new Tag(rec.optString("type", TagType.PERSON.getDisplayName()),
+                        rec.optString("value", ""));
+                if (!p.hasTag(tag)) return false;
+                p.removeTag(tag);
+                return true;
+            }
+            default:
+                Log.w(TAG, "Unknown journal op: " + op);
+                return false;
+        }
+    }
+
+    /**
+     * End of the run of OP_ADD_TAG records for one photo starting at {@code from}, as written
+     * by a batch, or {@code from + 1} if there is none.
+     */
+    private static int tagRunEnd(List<JSONObject> records, int from) {
+        JSONObject first = records.get(from);
+        int end = from + 1;
+        if (!OP_ADD_TAG.equals(first.optString("op", ""))) return end;
+        String photo = first.optString("photo", null);
+        String album = first.optString("album", null);
+        while (end < records.size()) {
+            JSONObject rec = records.get(end);
+            if (!OP_ADD_TAG.equals(rec.optString("op", ""))
+                    || !Objects.equals(photo, rec.optString("photo", null))
+                    || !Objects.equals(album, rec.optString("album", null))) {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    /** Applies a run of OP_ADD_TAG records for one photo with a single tag map copy. */
+    private static int addTags(List<Album> albums, List<JSONObject> run) {
+        JSONObject first = run.get(0);
+        Photo p = findPhoto(albums, findAlbum(albums, first.optString("album", null)), first);
+        if (p == null) return 0;
+        Set<Tag> added = new LinkedHashSet<>();
+        for (JSONObject rec : run) {
+            Tag tag = new Tag(rec.optString("type", TagType.PERSON.getDisplayName()),
+                    rec.optString("value", ""));
+            if (!p.hasTag(tag)) added.add(tag);
+        }
+        p.addTags(added);
+        return added.size();
+    }
+
+    private static Album findAlbum(List<Album> albums, String name) {
+        if (name == null) return null;
+        for (Album a : albums) {
+            if (a.getName().equalsIgnoreCase(name)) return a;
+        }
+        return null;
+    }
+
+    private static Photo findPhotoIn(Album album, String photoId) {
+        if (album == null || photoId == null) return null;
+        for (Photo p : album.getPhotos()) {
+            if (photoId.equals(p.getId())) return p;
+        }
+        return null;
+    }
+
+    /**
+     * Scans loaded albums only: an album replay left unloaded was never touched by a record,
+     * so it cannot hold a photo a record refers to.
+     */
+    private static Photo findPhoto(List<Album> albums, String photoId) {
+        for (Album a : albums) {
+            if (!a.isLoaded()) continue;
+            Photo p = findPhotoIn(a, photoId);
+            if (p != null) return p;
+        }
+        return null;
+    }
+
+    /** The record's photo, looked up in the album the record names if it names one. */
+    private static Photo findPhoto(List<Album> albums, Album album, JSONObject rec) {
+        String photoId = rec.optString("photo", null);
+        return rec.has("album") ? findPhotoIn(album, photoId) : findPhoto(albums, photoId);
+    }
+
+    private static File journalFile(Context context) {
+        return new File(context.getFilesDir(), JOURNAL_FILENAME);
+    }
+
+    private static File rotatedFile(Context context) {
+        return new File(context.getFilesDir(), ROTATED_FILENAME);
+    }
+
+    private static File backupFile(Context context) {
+        return new File(context.getFilesDir(), BACKUP_FILENAME);
+    }
+}
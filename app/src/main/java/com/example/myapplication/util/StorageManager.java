@@ -1,73 +1,316 @@
 package com.example.myapplication.util;
 
 import android.content.Context;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
 import android.util.Log;
 
 import com.example.myapplication.model.Album;
 import com.example.myapplication.model.Photo;
 import com.example.myapplication.model.Tag;
-import com.example.myapplication.model.TagType;
-
-import org.json.JSONArray;
-import org.json.JSONObject;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
 
 /**
- * StorageManager: JSON-backed persistence for albums/photos/tags.
+ * StorageManager: snapshot persistence for albums/photos/tags.
+ * Snapshots are written as albums.manifest with one segment file per album in album-segments/
+ * ({@link AlbumManifest}) or as albums.json (streamed with JsonReader/JsonWriter, no
+ * intermediate DOM). The loader detects which one is present, still reads a single-file
+ * albums.bin ({@link BinarySnapshot}), and migrates either of the others to the manifest on
+ * first load. Snapshots are replaced atomically (temp file, fsync, rename) and the previous one
+ * is kept as a .bak backup that the loader falls back to if the current snapshot is damaged.
+ * Switching formats turns the old format's snapshot into its .bak, and those backups are only
+ * deleted once a snapshot in the current format has loaded. A JSON snapshot ends with a
+ * "#crc32" comment line so damage is caught even when the text still parses.
  * Keeps a cached in-memory reference so Activities operate on the same instances.
+ * Individual edits are appended to the {@link MutationJournal} and replayed on load;
+ * the snapshot is only rewritten when the journal is compacted.
+ * A manifest loads lazily: albums come back with names, covers and counts read from the
+ * manifest alone, and an album's segment is only mapped once its photos are used.
  */
 public class StorageManager {
     private static final String ALBUMS_FILENAME = "albums.json";
+    private static final String BINARY_FILENAME = "albums.bin";
+    private static final String MANIFEST_FILENAME = "albums.manifest";
+    private static final String SEGMENT_DIR = "album-segments";
+    private static final String[] SNAPSHOT_FILENAMES = {MANIFEST_FILENAME, BINARY_FILENAME, ALBUMS_FILENAME};
     private static final String TAG = "StorageManager";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String BACKUP_SUFFIX = ".bak";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String JSON_TRAILER_PREFIX = "\n#crc32 ";
+    private static final int JSON_TRAILER_LENGTH = JSON_TRAILER_PREFIX.length() + 9;
     private static List<Album> cachedAlbums = null;
 
+    /** BINARY is the album manifest with per-album segments. */
+    public enum SnapshotFormat {
+        JSON, BINARY
+    }
+
+    /**
+     * An encoded library ready for {@link #writeSnapshot}: the snapshot file, plus for a
+     * manifest the segment files it refers to that are not on disk yet.
+     */
+    public static final class Encoded {
+        final byte[] snapshot;
+        final Map<String, byte[]> segments;
+
+        Encoded(byte[] snapshot, Map<String, byte[]> segments) {
+            this.snapshot = snapshot;
+            this.segments = segments;
+        }
+    }
+
+    private static SnapshotFormat snapshotFormat = SnapshotFormat.BINARY;
+
+    /** Format used for snapshots written from now on; existing files are still readable. */
+    public static synchronized void setSnapshotFormat(SnapshotFormat format) {
+        snapshotFormat = format;
+    }
+
+    public static synchronized SnapshotFormat getSnapshotFormat() {
+        return snapshotFormat;
+    }
+
+    /** Forgets the albums kept from the last load or save, so the next load reads the files. */
+    static synchronized void clearCache() {
+        cachedAlbums = null;
+    }
+
     public static synchronized void saveAlbums(Context context, List<Album> albums) {
         try {
             if (albums == null) albums = new ArrayList<>();
             cachedAlbums = albums;
+            writeSnapshot(context, encodeAlbums(albums));
+            Log.d(TAG, "Saved " + albums.size() + " albums (" + snapshotFormat + ")");
+        } catch (Exception e) {
+            Log.e(TAG, "Error saving albums", e);
+        }
+    }
 
-            JSONArray root = new JSONArray();
-            for (Album a : albums) {
-                JSONObject albumObj = new JSONObject();
-                albumObj.put("name", a.getName());
-                JSONArray photosArr = new JSONArray();
-                for (Photo p : a.getPhotos()) {
-                    JSONObject pObj = new JSONObject();
-                    pObj.put("id", p.getId());
-                    pObj.put("imagePath", p.getImagePath());
-                    pObj.put("filename", p.getFilename());
-                    JSONArray tagsArr = new JSONArray();
-                    for (Tag t : p.getTags()) {
-                        JSONObject tObj = new JSONObject();
-                        tObj.put("type", t.getTagType().getDisplayName());
-                        tObj.put("value", t.getTagValue());
-                        tagsArr.put(tObj);
-                    }
-                    pObj.put("tags", tagsArr);
-                    photosArr.put(pObj);
-                }
-                albumObj.put("photos", photosArr);
-                root.put(albumObj);
+    /**
+     * Serializes the albums in the current snapshot format. Kept separate from
+     * {@link #writeSnapshot} so the caller can capture a consistent snapshot under its lock
+     * and do the file write elsewhere. Only loaded albums are encoded in full for a manifest.
+     */
+    public static synchronized Encoded encodeAlbums(List<Album> albums) throws IOException {
+        if (snapshotFormat == SnapshotFormat.BINARY) {
+            return AlbumManifest.encode(albums);
+        }
+        return new Encoded(encodeJson(albums), Collections.emptyMap());
+    }
+
+    public static byte[] encodeJson(List<Album> albums) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        exportJson(albums, bytes);
+        return bytes.toByteArray();
+    }
+
+    /** Writes the albums in the albums.json format, e.g. for export or sharing. */
+    public static void exportJson(List<Album> albums, OutputStream out) throws IOException {
+        JsonWriter writer = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE));
+        writeAlbums(writer, albums);
+        writer.flush();
+    }
+
+    /**
+     * Writes an encoded snapshot to the file for its format, found from its magic number, and
+     * moves other formats' snapshots to their backups so the loader cannot pick a stale one.
+     * A manifest's new segments are on disk before the manifest that refers to them.
+     */
+    public static synchronized void writeSnapshot(Context context, Encoded encoded) throws IOException {
+        File segmentDir = segmentDir(context);
+        if (!encoded.segments.isEmpty() && !segmentDir.isDirectory() && !segmentDir.mkdirs()) {
+            throw new IOException("Could not create " + segmentDir);
+        }
+        for (Map.Entry<String, byte[]> segment : encoded.segments.entrySet()) {
+            byte[] bytes = segment.getValue();
+            writeAtomically(new File(segmentDir, segment.getKey()), out -> out.write(bytes));
+        }
+        byte[] snapshot = encoded.snapshot;
+        int magic = snapshot.length >= 4 ? ByteBuffer.wrap(snapshot).getInt() : 0;
+        String name = magic == AlbumManifest.MAGIC ? MANIFEST_FILENAME
+                : magic == BinarySnapshot.MAGIC ? BINARY_FILENAME : ALBUMS_FILENAME;
+        File outFile = new File(context.getFilesDir(), name);
+        boolean json = name.equals(ALBUMS_FILENAME);
+        writeAtomically(outFile, out -> {
+            out.write(snapshot);
+            if (json) out.write(jsonTrailer(snapshot));
+        });
+        for (String other : SNAPSHOT_FILENAMES) {
+            if (!other.equals(name)) retireSnapshot(new File(context.getFilesDir(), other));
+        }
+        // Unloaded albums may read old segments after a JSON write; only a manifest prunes them.
+        if (name.equals(MANIFEST_FILENAME)) {
+            AlbumManifest.deleteUnreferenced(segmentDir, outFile, backupOf(outFile));
+        }
+        Log.d(TAG, "Wrote snapshot to " + outFile.getAbsolutePath() + " with "
+                + encoded.segments.size() + " new segment(s)");
+    }
+
+    private static File segmentDir(Context context) {
+        return new File(context.getFilesDir(), SEGMENT_DIR);
+    }
+
+    private interface SnapshotWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes to a temp file, fsyncs it, keeps the current file as the .bak backup and renames
+     * the temp file into place. A crash at any point leaves either the old or the new snapshot
+     * (or its backup) intact on disk.
+     */
+    private static void writeAtomically(File target, SnapshotWriter writer) throws IOException {
+        File tmp = new File(target.getPath() + TEMP_SUFFIX);
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            writer.writeTo(fos);
+            fos.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        File backup = backupOf(target);
+        if (target.exists()) {
+            deleteIfExists(backup);
+            if (!target.renameTo(backup)) {
+                tmp.delete();
+                throw new IOException("Could not move " + target + " to " + backup);
             }
+        }
+        if (!tmp.renameTo(target)) {
+            throw new IOException("Could not move " + tmp + " to " + target);
+        }
+    }
+
+    private static File backupOf(File snapshot) {
+        return new File(snapshot.getPath() + BACKUP_SUFFIX);
+    }
 
-            File filesDir = context.getFilesDir();
-            File outFile = new File(filesDir, ALBUMS_FILENAME);
-            try (FileOutputStream fos = new FileOutputStream(outFile)) {
-                byte[] bytes = root.toString().getBytes(StandardCharsets.UTF_8);
-                fos.write(bytes);
-                fos.flush();
+    /**
+     * Replaces a snapshot's backup with the snapshot itself. Used for the formats not being
+     * written, so a damaged first snapshot in the new format still has the old one to fall
+     * back to. Without a current snapshot the existing backup is kept.
+     */
+    private static void retireSnapshot(File snapshot) {
+        if (!snapshot.exists()) return;
+        File backup = backupOf(snapshot);
+        deleteIfExists(backup);
+        if (!snapshot.renameTo(backup)) {
+            Log.w(TAG, "Could not move " + snapshot.getAbsolutePath() + " to " + backup.getName());
+            deleteIfExists(snapshot);
+        }
+    }
+
+    private static byte[] jsonTrailer(byte[] json) {
+        CRC32 crc = new CRC32();
+        crc.update(json, 0, json.length);
+        String trailer = JSON_TRAILER_PREFIX + String.format(Locale.ROOT, "%08x", crc.getValue()) + "\n";
+        return trailer.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Checks a JSON snapshot against its checksum trailer. Returns false for a file without
+     * one (written before trailers existed) and throws if the checksum does not match.
+     */
+    private static boolean verifyJsonTrailer(File f) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            long bodyLength = raf.length() - JSON_TRAILER_LENGTH;
+            if (bodyLength < 0) return false;
+            byte[] trailer = new byte[JSON_TRAILER_LENGTH];
+            raf.seek(bodyLength);
+            raf.readFully(trailer);
+            String text = new String(trailer, StandardCharsets.US_ASCII);
+            if (!text.startsWith(JSON_TRAILER_PREFIX) || !text.endsWith("\n")) return false;
+            long expectedCrc;
+            try {
+                expectedCrc = Long.parseLong(text.substring(JSON_TRAILER_PREFIX.length(), text.length() - 1), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed checksum trailer in " + f.getName(), e);
             }
-            Log.d(TAG, "Saved " + albums.size() + " albums to " + outFile.getAbsolutePath());
-        } catch (Exception e) {
-            Log.e(TAG, "Error saving albums (json)", e);
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            raf.seek(0);
+            for (long remaining = bodyLength; remaining > 0; ) {
+                int n = (int) Math.min(buffer.length, remaining);
+                raf.readFully(buffer, 0, n);
+                crc.update(buffer, 0, n);
+                remaining -= n;
+            }
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("Checksum mismatch in " + f.getName());
+            }
+            return true;
+        }
+    }
+
+    private static void deleteIfExists(File f) {
+        if (f.exists() && !f.delete()) {
+            Log.w(TAG, "Could not delete " + f.getAbsolutePath());
+        }
+    }
+
+    /** Moves an unreadable snapshot aside so a later save cannot overwrite the evidence. */
+    private static void quarantine(File f) {
+        File dest = new File(f.getPath() + ".corrupt-" + System.currentTimeMillis());
+        if (!f.renameTo(dest)) {
+            Log.w(TAG, "Could not quarantine " + f.getAbsolutePath());
+        }
+    }
+
+    /** Streams the albums as JSON without building an intermediate document. */
+    static void writeAlbums(JsonWriter writer, List<Album> albums) throws IOException {
+        writer.beginArray();
+        for (Album a : albums) {
+            writer.beginObject();
+            writer.name("name").value(a.getName());
+            if (a.getCoverPhotoId() != null) {
+                writer.name("cover").value(a.getCoverPhotoId());
+            }
+            writer.name("photos").beginArray();
+            for (Photo p : BinarySnapshot.photosOf(a)) {
+                writer.beginObject();
+                writer.name("id").value(p.getId());
+                if (p.getImagePath() != null) writer.name("imagePath").value(p.getImagePath());
+                if (p.getFilename() != null) writer.name("filename").value(p.getFilename());
+                if (p.getContentHash() != null) writer.name("hash").value(p.getContentHash());
+                writer.name("tags").beginArray();
+                for (Tag t : p.getTags()) {
+                    writer.beginObject();
+                    writer.name("type").value(t.getTagType().getDisplayName());
+                    writer.name("value").value(t.getTagValue());
+                    writer.endObject();
+                }
+                writer.endArray();
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
         }
+        writer.endArray();
     }
 
     public static synchronized List<Album> loadAlbums(Context context) {
@@ -76,62 +319,197 @@ public class StorageManager {
             return cachedAlbums;
         }
 
-        try {
-            File filesDir = context.getFilesDir();
-            File inFile = new File(filesDir, ALBUMS_FILENAME);
-            if (!inFile.exists()) {
-                cachedAlbums = new ArrayList<>();
-                return cachedAlbums;
+        File filesDir = context.getFilesDir();
+        File manifestFile = new File(filesDir, MANIFEST_FILENAME);
+        File binFile = new File(filesDir, BINARY_FILENAME);
+        File jsonFile = new File(filesDir, ALBUMS_FILENAME);
+        // Current snapshots first, then the .bak files they replaced. Backups of retired formats
+        // can sit next to the current format's own, so those are tried newest first.
+        File[] backups = {backupOf(manifestFile), backupOf(binFile), backupOf(jsonFile)};
+        Arrays.sort(backups, Comparator.comparingLong(File::lastModified).reversed());
+        File[] candidates = {manifestFile, binFile, jsonFile, backups[0], backups[1], backups[2]};
+        List<Album> albums = null;
+        File source = null;
+        for (File f : candidates) {
+            if (!f.exists()) continue;
+            try {
+                albums = readSnapshot(context, f);
+                source = f;
+                break;
+            } catch (Exception e) {
+                Log.e(TAG, "Snapshot " + f.getName() + " is corrupt, trying backup", e);
+                quarantine(f);
             }
+        }
 
-            byte[] data;
-            try (FileInputStream fis = new FileInputStream(inFile)) {
-                data = fis.readAllBytes();
+        if (albums == null) {
+            albums = new ArrayList<>();
+        } else {
+            Log.d(TAG, "Loaded " + albums.size() + " albums from " + source.getAbsolutePath());
+        }
+        boolean fromBackup = source != null && source.getName().endsWith(BACKUP_SUFFIX);
+        if (source != null && !fromBackup && snapshotFormat == SnapshotFormat.BINARY
+                && !AlbumManifest.isManifest(source)) {
+            // One-time migration; the journal still applies on top of the same state. The
+            // albums are read back from the manifest so later writes can reuse their segments.
+            try {
+                writeSnapshot(context, AlbumManifest.encode(albums));
+                albums = AlbumManifest.read(manifestFile, segmentDir(context));
+                Log.d(TAG, "Migrated " + source.getName() + " to album manifest");
+            } catch (IOException e) {
+                Log.e(TAG, "Error migrating " + source.getName() + " to album manifest", e);
+            }
+        } else if (source != null && !fromBackup) {
+            // The current snapshot loaded, so the backups of the formats it replaced can go.
+            for (String other : SNAPSHOT_FILENAMES) {
+                if (!other.equals(source.getName())) deleteIfExists(backupOf(new File(filesDir, other)));
             }
+        }
+        MutationJournal.replay(context, albums, fromBackup);
+        cachedAlbums = albums;
+        return albums;
+    }
 
-            String content = new String(data, StandardCharsets.UTF_8);
-            JSONArray root = new JSONArray(content);
-            List<Album> albums = new ArrayList<>();
-            for (int i = 0; i < root.length(); i++) {
-                JSONObject albumObj = root.getJSONObject(i);
-                String name = albumObj.optString("name", "");
-                Album album = new Album(name);
-                JSONArray photosArr = albumObj.optJSONArray("photos");
-                if (photosArr != null) {
-                    for (int j = 0; j < photosArr.length(); j++) {
-                        JSONObject pObj = photosArr.getJSONObject(j);
-                        String imagePath = pObj.optString("imagePath", null);
-                        String filename = pObj.optString("filename", null);
-                        Photo photo = (filename != null)
-                            ? new Photo(imagePath, filename)
-                            : new Photo(imagePath);
-                        String id = pObj.optString("id", null);
-                        if (id != null && !id.isEmpty()) {
-                            photo.setId(id);
-                        }
-                        JSONArray tagsArr = pObj.optJSONArray("tags");
-                        if (tagsArr != null && tagsArr.length() > 0) {
-                            for (int k = 0; k < tagsArr.length(); k++) {
-                                JSONObject tObj = tagsArr.getJSONObject(k);
-                                String type = tObj.optString("type", "Person");
-                                String value = tObj.optString("value", "");
-                                Tag tag = new Tag(type, value);
-                                photo.addTag(tag);
-                            }
-                        }
-                        album.addPhoto(photo);
-                    }
-                }
-                albums.add(album);
+    /**
+     * Reads one snapshot file in whichever format it is. Manifests and binary snapshots are
+     * verified against their CRC32 and read lazily; JSON snapshots are verified against their
+     * trailer when they have one and must parse completely. Either way a damaged file throws.
+     */
+    private static List<Album> readSnapshot(Context context, File f) throws IOException {
+        if (AlbumManifest.isManifest(f)) {
+            return AlbumManifest.read(f, segmentDir(context));
+        }
+        if (BinarySnapshot.isBinarySnapshot(f)) {
+            return BinarySnapshot.readLazy(f);
+        }
+        boolean verified = verifyJsonTrailer(f);
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            // The trailer is a '#' comment, which only lenient parsing skips; the checksum
+            // already vouches for the rest of the file.
+            reader.setLenient(verified);
+            List<Album> albums = readAlbums(reader);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IOException("Trailing data after albums in " + f.getName());
             }
-            cachedAlbums = albums;
-            Log.d(TAG, "Loaded " + albums.size() + " albums from " + inFile.getAbsolutePath());
             return albums;
-        } catch (Exception e) {
-            Log.e(TAG, "Error loading albums (json)", e);
-            cachedAlbums = new ArrayList<>();
-            return cachedAlbums;
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed JSON snapshot " + f.getName(), e);
+        }
+    }
+
+    /** Builds Album/Photo/Tag objects directly from the token stream. Unknown fields are skipped. */
+    static List<Album> readAlbums(JsonReader reader) throws IOException {
+        List<Album> albums = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            albums.add(readAlbum(reader));
+        }
+        reader.endArray();
+        return albums;
+    }
+
+    private static Album readAlbum(JsonReader reader) throws IOException {
+        String name = "";
+        String cover = null;
+        List<Photo> photos = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name":
+                    name = nextString(reader, "");
+                    break;
+                case "cover":
+                    cover = nextString(reader, null);
+                    break;
+                case "photos":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        photos.add(readPhoto(reader));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        Album album = new Album(name);
+        if (cover != null && !cover.isEmpty()) album.setCoverPhotoId(cover);
+        for (Photo p : photos) album.addPhoto(p);
+        return album;
+    }
+
+    private static Photo readPhoto(JsonReader reader) throws IOException {
+        String id = null;
+        String imagePath = null;
+        String filename = null;
+        String hash = null;
+        List<Tag> tags = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = nextString(reader, null);
+                    break;
+                case "imagePath":
+                    imagePath = nextString(reader, null);
+                    break;
+                case "filename":
+                    filename = nextString(reader, null);
+                    break;
+                case "hash":
+                    hash = nextString(reader, null);
+                    break;
+                case "tags":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        tags.add(readTag(reader));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        Photo photo = (filename != null)
+            ? new Photo(imagePath, filename)
+            : new Photo(imagePath);
+        if (id != null && !id.isEmpty()) {
+            photo.setId(id);
+        }
+        photo.setContentHash(hash);
+        photo.addTags(tags);
+        return photo;
+    }
+
+    private static Tag readTag(JsonReader reader) throws IOException {
+        String type = "Person";
+        String value = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "type":
+                    type = nextString(reader, type);
+                    break;
+                case "value":
+                    value = nextString(reader, value);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Tag(type, value);
+    }
+
+    private static String nextString(JsonReader reader, String fallback) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return fallback;
         }
+        return reader.nextString();
     }
 
     public static List<String> getAllAlbumNames(List<Album> albums) {
@@ -0,0 +1,279 @@
+package com.example.myapplication.util;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+import com.example.myapplication.model.Tag;
+import com.example.myapplication.model.TagType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * TagIndex: inverted index from (TagType, normalized tag value) to the photos carrying that
+ * tag. Every indexed photo gets a dense integer ordinal and each posting is a bitmap over
+ * ordinals, so AND, OR and NOT of terms are word-wise bit operations. Values are kept in a
+ * sorted map per type so prefix lookups only visit the matching keys. DataStore keeps it in
+ * step with every tag and photo mutation. The same sorted keys back autocomplete, ranked by
+ * how many photos use each value. Ordinals of removed photos are reused, so results are
+ * returned in the {@link Order} the index was created with rather than in ordinal order.
+ */
+public class TagIndex {
+
+    /** Where a photo sits in the library; results are sorted by it, lowest first. */
+    public interface Order {
+        long positionOf(Photo photo);
+    }
+
+    private static class Posting {
+        final String displayValue;
+        final BitSet ordinals = new BitSet();
+        int count;
+
+        Posting(String displayValue) {
+            this.displayValue = displayValue;
+        }
+    }
+
+    private final Map<TagType, TreeMap<String, Posting>> postings = new EnumMap<>(TagType.class);
+    private final Map<String, Integer> ordinalsById = new HashMap<>();
+    private final List<Photo> photosByOrdinal = new ArrayList<>();
+    /** Ordinals of removed photos, reused so the bitmaps stay dense. */
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private final BitSet live = new BitSet();
+    /** Bumped on every change, so callers can tell whether ordinals still mean the same photos. */
+    private long version = 0;
+    private final Order order;
+
+    /** An index returning results in ordinal order, i.e. the order photos were indexed in. */
+    public TagIndex() {
+        this(null);
+    }
+
+    public TagIndex(Order order) {
+        this.order = order;
+    }
+
+    public static String normalize(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    public synchronized void rebuild(List<Album> albums) {
+        postings.clear();
+        ordinalsById.clear();
+        photosByOrdinal.clear();
+        freeOrdinals.clear();
+        live.clear();
+        version++;
+        if (albums == null) return;
+        for (Album a : albums) {
+            // Photos of unloaded albums are added by DataStore when it loads them.
+            if (!a.isLoaded()) continue;
+            for (Photo p : a.getPhotos()) {
+                addPhoto(p);
+            }
+        }
+    }
+
+    /** Indexes the photo, with every tag currently on it. */
+    public synchronized void addPhoto(Photo photo) {
+        ordinal(photo);
+        for (Tag t : photo.getTags()) {
+            addTag(photo, t);
+        }
+    }
+
+    public synchronized void removePhoto(Photo photo) {
+        Integer ordinal = ordinalsById.remove(photo.getId());
+        if (ordinal == null) return;
+        for (Tag t : photo.getTags()) {
+            removePosting(ordinal, t);
+        }
+        photosByOrdinal.set(ordinal, null);
+        live.clear(ordinal);
+        freeOrdinals.push(ordinal);
+        version++;
+    }
+
+    public synchronized void addTag(Photo photo, Tag tag) {
+        if (photo == null || tag == null || tag.getTagType() == null) return;
+        int ordinal = ordinal(photo);
+        TreeMap<String, Posting> byValue = postings.get(tag.getTagType());
+        if (byValue == null) {
+            byValue = new TreeMap<>();
+            postings.put(tag.getTagType(), byValue);
+        }
+        String key = tag.getNormalizedValue();
+        Posting posting = byValue.get(key);
+        if (posting == null) {
+            posting = new Posting(tag.getTagValue());
+            byValue.put(key, posting);
+        }
+        if (!posting.ordinals.get(ordinal)) {
+            posting.ordinals.set(ordinal);
+            posting.count++;
+            version++;
+        }
+    }
+
+    /** Call after the tag has been removed from the photo. */
+    public synchronized void removeTag(Photo photo, Tag tag) {
+        if (photo == null || tag == null) return;
+        Integer ordinal = ordinalsById.get(photo.getId());
+        if (ordinal != null) removePosting(ordinal, tag);
+    }
+
+    private int ordinal(Photo photo) {
+        Integer ordinal = ordinalsById.get(photo.getId());
+        if (ordinal != null) return ordinal;
+        if (freeOrdinals.isEmpty()) {
+            ordinal = photosByOrdinal.size();
+            photosByOrdinal.add(photo);
+        } else {
+            ordinal = freeOrdinals.pop();
+            photosByOrdinal.set(ordinal, photo);
+        }
+        ordinalsById.put(photo.getId(), ordinal);
+        live.set(ordinal);
+        version++;
+        return ordinal;
+    }
+
+    private void removePosting(int ordinal, Tag tag) {
+        TreeMap<String, Posting> byValue = postings.get(tag.getTagType());
+        if (byValue == null) return;
+        String key = tag.getNormalizedValue();
+        Posting posting = byValue.get(key);
+        if (posting == null || !posting.ordinals.get(ordinal)) return;
+        posting.ordinals.clear(ordinal);
+        if (--posting.count == 0) byValue.remove(key);
+        version++;
+    }
+
+    /** Ordinals of photos with a tag of this type whose value equals {@code value}, ignoring case. */
+    public synchronized BitSet exact(TagType type, String value) {
+        TreeMap<String, Posting> byValue = postings.get(type);
+        if (byValue == null || value == null) return new BitSet();
+        Posting posting = byValue.get(normalize(value));
+        return posting == null ? new BitSet() : (BitSet) posting.ordinals.clone();
+    }
+
+    /** Ordinals of photos with a tag of this type whose value starts with {@code prefix}, ignoring case. */
+    public synchronized BitSet prefix(TagType type, String prefix) {
+        BitSet result = new BitSet();
+        for (Posting posting : range(type, prefix).values()) {
+            result.or(posting.ordinals);
+        }
+        return result;
+    }
+
+    /**
+     * Number of photos a term matches, from the cached posting counts. For a prefix spanning
+     * several values this is an upper bound, as a photo may carry more than one of them.
+     */
+    public synchronized int count(TagType type, String value, boolean prefix) {
+        if (!prefix) {
+            TreeMap<String, Posting> byValue = postings.get(type);
+            Posting posting = byValue == null || value == null ? null : byValue.get(normalize(value));
+            return posting == null ? 0 : posting.count;
+        }
+        long total = 0;
+        for (Posting posting : range(type, value).values()) {
+            total += posting.count;
+        }
+        return (int) Math.min(total, ordinalsById.size());
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    /** Number of indexed photos. */
+    public synchronized int size() {
+        return ordinalsById.size();
+    }
+
+    /** Ordinals of every indexed photo; the universe for NOT. */
+    public synchronized BitSet all() {
+        return (BitSet) live.clone();
+    }
+
+    /** The photos for a set of ordinals, sorted by the index's {@link Order}. */
+    public synchronized List<Photo> photos(BitSet ordinals) {
+        List<Photo> result = new ArrayList<>(ordinals.cardinality());
+        for (int i = ordinals.nextSetBit(0); i >= 0; i = ordinals.nextSetBit(i + 1)) {
+            Photo p = i < photosByOrdinal.size() ? photosByOrdinal.get(i) : null;
+            if (p != null) result.add(p);
+        }
+        if (order == null || result.size() < 2) return result;
+        // Look each position up once; the sort is stable, so ties stay in ordinal order.
+        long[] positions = new long[result.size()];
+        Integer[] byPosition = new Integer[result.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = order.positionOf(result.get(i));
+            byPosition[i] = i;
+        }
+        Arrays.sort(byPosition, Comparator.comparingLong(i -> positions[i]));
+        List<Photo> sorted = new ArrayList<>(result.size());
+        for (int i : byPosition) sorted.add(result.get(i));
+        return sorted;
+    }
+
+    /**
+     * Up to {@code limit} distinct values of this type starting with {@code prefix}, most used
+     * first (ties in alphabetical order). Only a heap of {@code limit} entries is allocated.
+     */
+    public synchronized List<String> suggest(TagType type, String prefix, int limit) {
+        SortedMap<String, Posting> range = range(type, prefix);
+        if (range.isEmpty() || limit <= 0) return new ArrayList<>();
+        // Min-heap on rank: the head is the weakest of the current top entries.
+        PriorityQueue<Map.Entry<String, Posting>> top = new PriorityQueue<>(limit + 1, (x, y) -> {
+            int c = Integer.compare(x.getValue().count, y.getValue().count);
+            return c != 0 ? c : y.getKey().compareTo(x.getKey());
+        });
+        for (Map.Entry<String, Posting> e : range.entrySet()) {
+            top.offer(e);
+            if (top.size() > limit) top.poll();
+        }
+        String[] ordered = new String[top.size()];
+        for (int i = ordered.length - 1; i >= 0; i--) {
+            ordered[i] = top.poll().getValue().displayValue;
+        }
+        return new ArrayList<>(Arrays.asList(ordered));
+    }
+
+    /** Every distinct value of this type, in case-insensitive order. */
+    public synchronized List<String> values(TagType type) {
+        TreeMap<String, Posting> byValue = postings.get(type);
+        List<String> result = new ArrayList<>();
+        if (byValue == null) return result;
+        for (Posting posting : byValue.values()) {
+            result.add(posting.displayValue);
+        }
+        return result;
+    }
+
+    private SortedMap<String, Posting> range(TagType type, String prefix) {
+        TreeMap<String, Posting> byValue = postings.get(type);
+        if (byValue == null || prefix == null) return Collections.emptySortedMap();
+        String from = normalize(prefix);
+        return byValue.subMap(from, from + Character.MAX_VALUE);
+    }
+
+    public synchronized Photo getPhoto(String photoId) {
+        Integer ordinal = ordinalsById.get(photoId);
+        return ordinal == null ? null : photosByOrdinal.get(ordinal);
+    }
+}
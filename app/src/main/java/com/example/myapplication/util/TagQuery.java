@@ -0,0 +1,387 @@
+package com.example.myapplication.util;
+
+import com.example.myapplication.model.TagType;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * TagQuery: boolean tag query of any depth, evaluated against TagIndex bitmaps.
+ *
+ * <pre>
+ * query   := or
+ * or      := and ( ("OR" | "|") and )*
+ * and     := unary ( ["AND" | "&amp;"] unary )*        adjacent terms are ANDed
+ * unary   := ("NOT" | "!" | "-") unary | "(" or ")" | term
+ * term    := type ":" value                          value is a prefix
+ *          | type "=" value                          value must match exactly
+ * value   := word | "quoted text"
+ * </pre>
+ *
+ * Keywords and types are case-insensitive, e.g.
+ * {@code person:ann (location="New York" | location:paris) -person:bob}.
+ * AND nodes are planned at evaluation time: their terms run most selective first, NOT
+ * children are subtracted last, and evaluation stops as soon as the intersection is empty.
+ */
+public abstract class TagQuery {
+
+    /** Ordinals of matching photos; the caller owns the returned set. */
+    abstract BitSet evaluate(TagIndex index);
+
+    /** Upper bound on the number of matches, used to order AND children. */
+    abstract int estimate(TagIndex index);
+
+    /**
+     * Narrows the previous result instead of evaluating from scratch when this query only
+     * extends {@code previous}: the same AND of terms (or single term) where every prefix
+     * term's value starts with the previous value and exact terms are unchanged. Only the
+     * terms that changed are evaluated, and ANDed into a copy of the previous result.
+     * Returns null if this query is not such a refinement.
+     */
+    BitSet refine(TagQuery previous, BitSet previousResult, TagIndex index) {
+        List<Term> now = terms(this);
+        List<Term> before = terms(previous);
+        if (now == null || before == null || now.size() != before.size()) return null;
+        for (int i = 0; i < now.size(); i++) {
+            Term n = now.get(i);
+            Term b = before.get(i);
+            if (n.type != b.type || n.prefix != b.prefix) return null;
+            String nv = TagIndex.normalize(n.value);
+            String bv = TagIndex.normalize(b.value);
+            if (n.prefix ? !nv.startsWith(bv) : !nv.equals(bv)) return null;
+        }
+        BitSet result = (BitSet) previousResult.clone();
+        for (int i = 0; i < now.size() && !result.isEmpty(); i++) {
+            if (!TagIndex.normalize(now.get(i).value).equals(TagIndex.normalize(before.get(i).value))) {
+                result.and(now.get(i).evaluate(index));
+            }
+        }
+        return result;
+    }
+
+    /** The terms of a single term or a flat AND of terms; null for any other shape. */
+    private static List<Term> terms(TagQuery query) {
+        if (query instanceof Term) return Collections.singletonList((Term) query);
+        if (!(query instanceof And)) return null;
+        List<Term> terms = new ArrayList<>();
+        for (TagQuery child : ((And) query).children) {
+            if (!(child instanceof Term)) return null;
+            terms.add((Term) child);
+        }
+        return terms;
+    }
+
+    public static TagQuery term(TagType type, String value, boolean prefix) {
+        return new Term(type, value, prefix);
+    }
+
+    public static TagQuery and(TagQuery... children) {
+        return new And(list(children));
+    }
+
+    public static TagQuery or(TagQuery... children) {
+        return new Or(list(children));
+    }
+
+    public static TagQuery not(TagQuery child) {
+        return new Not(child);
+    }
+
+    private static List<TagQuery> list(TagQuery[] children) {
+        List<TagQuery> list = new ArrayList<>(children.length);
+        Collections.addAll(list, children);
+        return list;
+    }
+
+    static final class Term extends TagQuery {
+        final TagType type;
+        final String value;
+        final boolean prefix;
+
+        Term(TagType type, String value, boolean prefix) {
+            this.type = type;
+            this.value = value;
+            this.prefix = prefix;
+        }
+
+        @Override
+        BitSet evaluate(TagIndex index) {
+            return prefix ? index.prefix(type, value) : index.exact(type, value);
+        }
+
+        @Override
+        int estimate(TagIndex index) {
+            return index.count(type, value, prefix);
+        }
+
+        @Override
+        public String toString() {
+            return type.getDisplayName().toLowerCase(Locale.ROOT) + (prefix ? ":" : "=") + quote(value);
+        }
+    }
+
+    static final class And extends TagQuery {
+        final List<TagQuery> children;
+
+        And(List<TagQuery> children) {
+            this.children = children;
+        }
+
+        @Override
+        BitSet evaluate(TagIndex index) {
+            List<TagQuery> positive = new ArrayList<>();
+            List<TagQuery> negative = new ArrayList<>();
+            for (TagQuery child : children) {
+                if (child instanceof Not) negative.add(((Not) child).child);
+                else positive.add(child);
+            }
+            BitSet result;
+            if (positive.isEmpty()) {
+                result = index.all();
+            } else {
+                int[] estimates = new int[positive.size()];
+                for (int i = 0; i < estimates.length; i++) estimates[i] = positive.get(i).estimate(index);
+                List<Integer> order = new ArrayList<>(estimates.length);
+                for (int i = 0; i < estimates.length; i++) order.add(i);
+                order.sort(Comparator.comparingInt(i -> estimates[i]));
+                if (estimates[order.get(0)] == 0) return new BitSet();
+                result = positive.get(order.get(0)).evaluate(index);
+                for (int i = 1; i < order.size() && !result.isEmpty(); i++) {
+                    result.and(positive.get(order.get(i)).evaluate(index));
+                }
+            }
+            for (int i = 0; i < negative.size() && !result.isEmpty(); i++) {
+                result.andNot(negative.get(i).evaluate(index));
+            }
+            return result;
+        }
+
+        @Override
+        int estimate(TagIndex index) {
+            int min = Integer.MAX_VALUE;
+            boolean anyPositive = false;
+            for (TagQuery child : children) {
+                if (child instanceof Not) continue;
+                anyPositive = true;
+                min = Math.min(min, child.estimate(index));
+            }
+            return anyPositive ? min : index.size();
+        }
+
+        @Override
+        public String toString() {
+            return join(children, " AND ");
+        }
+    }
+
+    static final class Or extends TagQuery {
+        final List<TagQuery> children;
+
+        Or(List<TagQuery> children) {
+            this.children = children;
+        }
+
+        @Override
+        BitSet evaluate(TagIndex index) {
+            BitSet result = new BitSet();
+            for (TagQuery child : children) {
+                result.or(child.evaluate(index));
+            }
+            return result;
+        }
+
+        @Override
+        int estimate(TagIndex index) {
+            long sum = 0;
+            for (TagQuery child : children) sum += child.estimate(index);
+            return (int) Math.min(sum, index.size());
+        }
+
+        @Override
+        public String toString() {
+            return join(children, " OR ");
+        }
+    }
+
+    static final class Not extends TagQuery {
+        final TagQuery child;
+
+        Not(TagQuery child) {
+            this.child = child;
+        }
+
+        @Override
+        BitSet evaluate(TagIndex index) {
+            BitSet result = index.all();
+            result.andNot(child.evaluate(index));
+            return result;
+        }
+
+        @Override
+        int estimate(TagIndex index) {
+            return index.size();
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + (child instanceof Term ? child.toString() : "(" + child + ")");
+        }
+    }
+
+    private static String join(List<TagQuery> children, String op) {
+        StringBuilder sb = new StringBuilder();
+        for (TagQuery child : children) {
+            if (sb.length() > 0) sb.append(op);
+            boolean group = child instanceof And || child instanceof Or;
+            sb.append(group ? "(" : "").append(child).append(group ? ")" : "");
+        }
+        return sb.toString();
+    }
+
+    private static String quote(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!isWordChar(value.charAt(i))) return '"' + value.replace("\"", "") + '"';
+        }
+        return value;
+    }
+
+    /**
+     * Parses the text syntax described on this class.
+     *
+     * @throws IllegalArgumentException with a user-readable message if the query is malformed
+     */
+    public static TagQuery parse(String text) {
+        Parser parser = new Parser(text == null ? "" : text);
+        TagQuery query = parser.parseOr();
+        parser.skipSpace();
+        if (!parser.atEnd()) throw parser.error("Unexpected '" + parser.peek() + "'");
+        return query;
+    }
+
+    private static boolean isWordChar(char c) {
+        return !Character.isWhitespace(c) && c != '(' && c != ')' && c != '"' && c != '|' && c != '&';
+    }
+
+    private static final class Parser {
+        private final String s;
+        private int pos = 0;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        TagQuery parseOr() {
+            List<TagQuery> children = new ArrayList<>();
+            children.add(parseAnd());
+            while (true) {
+                skipSpace();
+                if (consume("|") || consumeKeyword("OR")) {
+                    children.add(parseAnd());
+                } else {
+                    break;
+                }
+            }
+            return children.size() == 1 ? children.get(0) : new Or(children);
+        }
+
+        TagQuery parseAnd() {
+            List<TagQuery> children = new ArrayList<>();
+            children.add(parseUnary());
+            while (true) {
+                skipSpace();
+                if (consume("&") || consumeKeyword("AND")) {
+                    children.add(parseUnary());
+                } else if (!atEnd() && peek() != ')' && peek() != '|' && !peekKeyword("OR")) {
+                    children.add(parseUnary());
+                } else {
+                    break;
+                }
+            }
+            return children.size() == 1 ? children.get(0) : new And(children);
+        }
+
+        TagQuery parseUnary() {
+            skipSpace();
+            if (atEnd()) throw error("Expected a tag such as person:ann");
+            if (consume("!") || consume("-") || consumeKeyword("NOT")) {
+                return new Not(parseUnary());
+            }
+            if (consume("(")) {
+                TagQuery inner = parseOr();
+                skipSpace();
+                if (!consume(")")) throw error("Missing ')'");
+                return inner;
+            }
+            return parseTerm();
+        }
+
+        TagQuery parseTerm() {
+            int start = pos;
+            while (!atEnd() && Character.isLetter(peek())) pos++;
+            String typeName = s.substring(start, pos);
+            TagType type = null;
+            for (TagType t : TagType.values()) {
+                if (t.getDisplayName().equalsIgnoreCase(typeName)) type = t;
+            }
+            if (type == null) throw error("Unknown tag type '" + typeName + "'");
+            boolean prefix;
+            if (consume(":")) prefix = true;
+            else if (consume("=")) prefix = false;
+            else throw error("Expected ':' or '=' after " + typeName);
+
+            String value;
+            if (consume("\"")) {
+                int end = s.indexOf('"', pos);
+                if (end < 0) throw error("Missing closing quote");
+                value = s.substring(pos, end);
+                pos = end + 1;
+            } else {
+                int valueStart = pos;
+                while (!atEnd() && isWordChar(peek())) pos++;
+                value = s.substring(valueStart, pos);
+            }
+            if (value.trim().isEmpty()) throw error("Missing value for " + typeName);
+            return new Term(type, value.trim(), prefix);
+        }
+
+        void skipSpace() {
+            while (!atEnd() && Character.isWhitespace(peek())) pos++;
+        }
+
+        boolean atEnd() {
+            return pos >= s.length();
+        }
+
+        char peek() {
+            return s.charAt(pos);
+        }
+
+        boolean consume(String token) {
+            if (s.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        boolean peekKeyword(String keyword) {
+            int end = pos + keyword.length();
+            return s.regionMatches(true, pos, keyword, 0, keyword.length())
+                    && (end >= s.length() || !isWordChar(s.charAt(end)));
+        }
+
+        boolean consumeKeyword(String keyword) {
+            if (!peekKeyword(keyword)) return false;
+            pos += keyword.length();
+            return true;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + (pos + 1));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.myapplication.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ThumbnailCache: two-tier cache of pre-scaled thumbnails keyed by photo ID and target size.
+ * The first tier is a byte-bounded in-memory LRU of decoded bitmaps; the second is a
+ * directory of WebP files under filesDir/images/thumbs, next to the imported originals,
+ * so cold starts never need to decode an original just to draw a grid cell.
+ */
+public class ThumbnailCache {
+    private static final String TAG = "ThumbnailCache";
+    private static final String THUMBS_DIR = "thumbs";
+    private static final int DISK_QUALITY = 80;
+
+    private static final LruCache<String, Bitmap> memory =
+            new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / 8)) {
+                @Override
+                protected int sizeOf(String key, Bitmap value) {
+                    return value.getAllocationByteCount();
+                }
+            };
+
+    private static final AtomicLong memoryHits = new AtomicLong();
+    private static final AtomicLong diskHits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private static String key(String photoId, int width, int height) {
+        return photoId + "_" + width + "x" + height;
+    }
+
+    /** Memory tier only; cheap enough to call from onBindViewHolder. */
+    public static Bitmap getFromMemory(String photoId, int width, int height) {
+        Bitmap bmp = memory.get(key(photoId, width, height));
+        if (bmp != null) memoryHits.incrementAndGet();
+        return bmp;
+    }
+
+    /**
+     * Returns the thumbnail from memory or disk, or decodes and stores it from the original.
+     * Must not be called on the main thread.
+     */
+    public static Bitmap load(Context context, String photoId, String imagePath, int width, int height) {
+        String key = key(photoId, width, height);
+        Bitmap bmp = memory.get(key);
+        if (bmp != null) {
+            memoryHits.incrementAndGet();
+            return bmp;
+        }
+
+        File thumbFile = new File(thumbsDir(context), key + ".webp");
+        if (thumbFile.exists()) {
+            bmp = BitmapFactory.decodeFile(thumbFile.getAbsolutePath());
+            if (bmp != null) {
+                diskHits.incrementAndGet();
+                memory.put(key, bmp);
+                return bmp;
+            }
+        }
+
+        misses.incrementAndGet();
+        bmp = ThumbnailLoader.decodeSampled(imagePath, width, height);
+        if (bmp == null) return null;
+        bmp = scaleToCover(bmp, width, height);
+        memory.put(key, bmp);
+        writeToDisk(thumbFile, bmp);
+        return bmp;
+    }
+
+    /**
+     * Drops every cached size of the photos, in memory and on disk, with one pass over each
+     * tier however many photos there are. Does file I/O, so not for the main thread.
+     */
+    public static void invalidate(Context context, Collection<String> photoIds) {
+        if (photoIds.isEmpty()) return;
+        Set<String> ids = new HashSet<>(photoIds);
+        for (String key : memory.snapshot().keySet()) {
+            if (ids.contains(photoIdOf(key))) memory.remove(key);
+        }
+        File[] files = thumbsDir(context).listFiles((dir, name) -> ids.contains(photoIdOf(name)));
+        if (files == null) return;
+        for (File f : files) {
+            if (!f.delete()) Log.w(TAG, "Could not delete thumbnail " + f.getAbsolutePath());
+        }
+    }
+
+    /** The photo ID a memory key or thumbnail file name belongs to. */
+    private static String photoIdOf(String keyOrName) {
+        int sizeStart = keyOrName.lastIndexOf('_');
+        return sizeStart < 0 ? keyOrName : keyOrName.substring(0, sizeStart);
+    }
+
+    public static long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public static long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static long getEvictions() {
+        return memory.evictionCount();
+    }
+
+    public static String stats() {
+        return "memoryHits=" + getMemoryHits() + " diskHits=" + getDiskHits()
+                + " misses=" + getMisses() + " evictions=" + getEvictions()
+                + " memoryBytes=" + memory.size() + "/" + memory.maxSize();
+    }
+
+    /** Scales the bitmap down, keeping aspect ratio, until one side matches the target. */
+    private static Bitmap scaleToCover(Bitmap bmp, int width, int height) {
+        if (width <= 0 || height <= 0) return bmp;
+        float scale = Math.max((float) width / bmp.getWidth(), (float) height / bmp.getHeight());
+        if (scale >= 1f) return bmp;
+        int w = Math.max(1, Math.round(bmp.getWidth() * scale));
+        int h = Math.max(1, Math.round(bmp.getHeight() * scale));
+        Bitmap scaled = Bitmap.createScaledBitmap(bmp, w, h, true);
+        if (scaled != bmp) bmp.recycle();
+        return scaled;
+    }
+
+    private static void writeToDisk(File thumbFile, Bitmap bmp) {
+        File tmp = new File(thumbFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            bmp.compress(Bitmap.CompressFormat.WEBP_LOSSY, DISK_QUALITY, out);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to write thumbnail " + thumbFile.getAbsolutePath(), e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(thumbFile)) tmp.delete();
+    }
+
+    private static File thumbsDir(Context context) {
+        File dir = new File(new File(context.getFilesDir(), "images"), THUMBS_DIR);
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.myapplication.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.example.myapplication.R;
+import com.example.myapplication.model.Photo;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ThumbnailLoader: decodes downsampled photo thumbnails off the main thread, going through
+ * ThumbnailCache so a thumbnail is only decoded from the original once.
+ * Each ImageView remembers its pending request in a view tag; binding the view to another
+ * photo or recycling it cancels that request, and a finished decode is only applied if the
+ * view is still waiting for the same photo ID.
+ */
+public class ThumbnailLoader {
+    private static final String TAG = "ThumbnailLoader";
+
+    private static final ExecutorService decoder = Executors.newFixedThreadPool(
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)));
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private static class Request {
+        final String photoId;
+        Future<?> future;
+
+        Request(String photoId) {
+            this.photoId = photoId;
+        }
+    }
+
+    /**
+     * Shows the placeholder, then loads the photo scaled so both sides are at least
+     * targetWidth x targetHeight pixels (enough for centerCrop).
+     */
+    public static void load(ImageView view, Photo photo, int targetWidth, int targetHeight, int placeholderRes) {
+        Request pending = (Request) view.getTag(R.id.thumbnail_request);
+        if (pending != null) {
+            if (photo != null && photo.getId().equals(pending.photoId)) return;
+            pending.future.cancel(true);
+            view.setTag(R.id.thumbnail_request, null);
+        }
+        if (photo == null || photo.getImagePath() == null) {
+            view.setImageResource(placeholderRes);
+            return;
+        }
+        Bitmap cached = ThumbnailCache.getFromMemory(photo.getId(), targetWidth, targetHeight);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+        view.setImageResource(placeholderRes);
+
+        final Request request = new Request(photo.getId());
+        final String photoId = photo.getId();
+        final String path = photo.getImagePath();
+        final Context appContext = view.getContext().getApplicationContext();
+        view.setTag(R.id.thumbnail_request, request);
+        request.future = decoder.submit(() -> {
+            Bitmap bmp = ThumbnailCache.load(appContext, photoId, path, targetWidth, targetHeight);
+            if (bmp == null || Thread.currentThread().isInterrupted()) return;
+            mainHandler.post(() -> {
+                if (view.getTag(R.id.thumbnail_request) == request) {
+                    view.setImageBitmap(bmp);
+                }
+            });
+        });
+    }
+
+    /** Cancels any pending load for the view, e.g. when its ViewHolder is recycled. */
+    public static void cancel(ImageView view) {
+        Request pending = (Request) view.getTag(R.id.thumbnail_request);
+        if (pending != null) {
+            pending.future.cancel(true);
+            view.setTag(R.id.thumbnail_request, null);
+        }
+    }
+
+    public static Bitmap decodeSampled(String path, int targetWidth, int targetHeight) {
+        try {
+            BitmapFactory.Options opts = new BitmapFactory.Options();
+            opts.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(path, opts);
+            if (opts.outWidth <= 0 || opts.outHeight <= 0) return null;
+
+            opts.inSampleSize = calculateInSampleSize(opts.outWidth, opts.outHeight, targetWidth, targetHeight);
+            opts.inJustDecodeBounds = false;
+            return BitmapFactory.decodeFile(path, opts);
+        } catch (Exception | OutOfMemoryError e) {
+            Log.e(TAG, "Failed to decode thumbnail: " + path, e);
+            return null;
+        }
+    }
+
+    /** Largest power of two that keeps both decoded sides at or above the target. */
+    static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (targetWidth <= 0 || targetHeight <= 0) return sampleSize;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.myapplication.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WriteBehindPersister: runs DataStore's disk writes on one background thread.
+ * Mutations only mark the store dirty; marks arriving within {@link #COALESCE_WINDOW_MS}
+ * are folded into a single journal write. Compaction tasks run on the same thread so every
+ * journal and snapshot file operation happens in order.
+ */
+public class WriteBehindPersister {
+    private static final String TAG = "WriteBehindPersister";
+
+    public static final long COALESCE_WINDOW_MS = 200;
+    private static final long RETRY_DELAY_MS = 5000;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "DataStore-persister"));
+
+    private boolean drainScheduled = false;
+    private long dirtyMarks = 0;
+    private long writes = 0;
+    private long totalWriteNanos = 0;
+    private long lastWriteNanos = 0;
+
+    /** Records that there is queued work and schedules a batched write if none is pending. */
+    public synchronized void markDirty(Context context) {
+        dirtyMarks++;
+        scheduleDrain(context.getApplicationContext(), COALESCE_WINDOW_MS);
+    }
+
+    /** Queues a task behind any writes already scheduled. */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Starts writing queued records now without waiting for them. Intended for onStop: the
+     * persister thread is not a daemon, so the write finishes even after the activity stops.
+     */
+    public void persist(Context context) {
+        final Context appContext = context.getApplicationContext();
+        executor.execute(() -> drain(appContext));
+    }
+
+    /** Writes queued records now and waits for all earlier persistence work to finish. */
+    public void flush(Context context) {
+        final Context appContext = context.getApplicationContext();
+        try {
+            executor.submit(() -> drain(appContext)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error flushing journal", e);
+        }
+    }
+
+    private synchronized void scheduleDrain(Context appContext, long delayMs) {
+        if (drainScheduled) return;
+        drainScheduled = true;
+        executor.schedule(() -> drain(appContext), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void drain(Context appContext) {
+        synchronized (this) {
+            drainScheduled = false;
+        }
+        byte[] records = MutationJournal.drainPending();
+        if (records.length == 0) return;
+        long start = System.nanoTime();
+        try {
+            MutationJournal.write(appContext, records);
+        } catch (IOException e) {
+            Log.e(TAG, "Journal write failed, retrying in " + RETRY_DELAY_MS + " ms", e);
+            MutationJournal.requeue(records);
+            scheduleDrain(appContext, RETRY_DELAY_MS);
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        synchronized (this) {
+            writes++;
+            totalWriteNanos += elapsed;
+            lastWriteNanos = elapsed;
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) Log.d(TAG, stats());
+    }
+
+    public synchronized long getDirtyMarks() {
+        return dirtyMarks;
+    }
+
+    public synchronized long getWrites() {
+        return writes;
+    }
+
+    /** Mutations per journal write; higher means more edits were coalesced into each write. */
+    public synchronized double getCoalescingRatio() {
+        return writes == 0 ? 0 : (double) dirtyMarks / writes;
+    }
+
+    public synchronized double getAverageWriteMillis() {
+        return writes == 0 ? 0 : totalWriteNanos / 1e6 / writes;
+    }
+
+    public synchronized double getLastWriteMillis() {
+        return lastWriteNanos / 1e6;
+    }
+
+    public synchronized String stats() {
+        return String.format(Locale.ROOT,
+                "marks=%d writes=%d coalescing=%.1f avgWriteMs=%.2f lastWriteMs=%.2f",
+                dirtyMarks, writes, getCoalescingRatio(), getAverageWriteMillis(), getLastWriteMillis());
+    }
+}
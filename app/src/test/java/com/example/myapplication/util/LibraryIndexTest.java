@@ -0,0 +1,168 @@
+package com.example.myapplication.util;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that LibraryIndex agrees with a full scan of the albums after every kind of
+ * mutation DataStore performs.
+ */
+public class LibraryIndexTest {
+
+    private List<Album> albums;
+    private LibraryIndex index;
+    private Album vacation;
+    private Album family;
+    private Photo beach;
+    private Photo dinner;
+
+    @Before
+    public void setUp() {
+        albums = new ArrayList<>();
+        vacation = new Album("Vacation");
+        family = new Album("Family");
+        beach = new Photo("/images/beach.jpg");
+        dinner = new Photo("/images/dinner.jpg");
+        vacation.addPhoto(beach);
+        family.addPhoto(dinner);
+        albums.add(vacation);
+        albums.add(family);
+        index = new LibraryIndex();
+        index.rebuild(albums);
+    }
+
+    @Test
+    public void rebuild_indexesEveryAlbumAndPhoto() {
+        assertConsistent();
+        assertSame(vacation, index.album("vacation"));
+        assertSame(vacation, index.album("VACATION"));
+        assertSame(beach, index.photo(beach.getId()));
+        assertSame(family, index.albumOf(dinner.getId()));
+        assertNull(index.album("Missing"));
+        assertNull(index.photo("missing"));
+        assertNull(index.album(null));
+        assertNull(index.photo(null));
+    }
+
+    @Test
+    public void album_matchesNameExactlyIgnoringCase() {
+        Album spaced = new Album("Vacation ");
+        index.addAlbum(albums, spaced);
+        assertSame(vacation, index.album("vAcAtIoN"));
+        assertSame(spaced, index.album("VACATION "));
+        assertNull(index.album(" Vacation"));
+        assertConsistent();
+    }
+
+    @Test
+    public void addAlbum_isFoundByName() {
+        Album work = new Album("Work");
+        index.addAlbum(albums, work);
+        assertSame(work, index.album("work"));
+        assertConsistent();
+    }
+
+    @Test
+    public void removeAlbum_dropsAlbumAndItsPhotos() {
+        index.removeAlbum(albums, vacation);
+        assertNull(index.album("Vacation"));
+        assertNull(index.photo(beach.getId()));
+        assertSame(dinner, index.photo(dinner.getId()));
+        assertConsistent();
+    }
+
+    @Test
+    public void renameAlbum_rekeysName() {
+        index.renameAlbum(vacation, "Trips");
+        assertNull(index.album("Vacation"));
+        assertSame(vacation, index.album("trips"));
+        assertSame(vacation, index.albumOf(beach.getId()));
+        assertConsistent();
+    }
+
+    @Test
+    public void renameAlbum_caseOnlyChangeKeepsAlbum() {
+        index.renameAlbum(vacation, "VACATION");
+        assertSame(vacation, index.album("Vacation"));
+        assertConsistent();
+    }
+
+    @Test
+    public void addPhoto_isFoundWithItsAlbum() {
+        Photo sunset = new Photo("/images/sunset.jpg");
+        index.addPhoto(vacation, sunset);
+        assertSame(sunset, index.photo(sunset.getId()));
+        assertSame(sunset, index.photoIn(vacation, sunset.getId()));
+        assertNull(index.photoIn(family, sunset.getId()));
+        assertConsistent();
+    }
+
+    @Test
+    public void removePhoto_dropsPhoto() {
+        index.removePhoto(vacation, beach);
+        assertNull(index.photo(beach.getId()));
+        assertFalse(vacation.getPhotos().contains(beach));
+        assertConsistent();
+    }
+
+    @Test
+    public void removePhoto_fromWrongAlbumKeepsEntry() {
+        index.removePhoto(family, beach);
+        assertSame(vacation, index.albumOf(beach.getId()));
+        assertConsistent();
+    }
+
+    @Test
+    public void movePhoto_updatesOwningAlbum() {
+        index.movePhoto(beach, vacation, family);
+        assertSame(family, index.albumOf(beach.getId()));
+        assertSame(beach, index.photoIn(family, beach.getId()));
+        assertNull(index.photoIn(vacation, beach.getId()));
+        assertConsistent();
+    }
+
+    @Test
+    public void mixedMutations_stayConsistent() {
+        for (int i = 0; i < 50; i++) {
+            Album a = new Album("Album " + i);
+            index.addAlbum(albums, a);
+            for (int j = 0; j < 5; j++) {
+                index.addPhoto(a, new Photo("/images/" + i + "_" + j + ".jpg"));
+            }
+        }
+        for (int i = 0; i < 50; i += 3) {
+            Album a = index.album("album " + i);
+            Photo p = a.getPhotos().get(0);
+            index.movePhoto(p, a, vacation);
+            index.removePhoto(a, a.getPhotos().get(0));
+            index.renameAlbum(a, "Renamed " + i);
+        }
+        for (int i = 1; i < 50; i += 3) {
+            index.removeAlbum(albums, index.album("album " + i));
+        }
+        assertConsistent();
+    }
+
+    private void assertConsistent() {
+        int photoCount = 0;
+        for (Album a : albums) {
+            assertSame(a, index.album(a.getName()));
+            for (Photo p : a.getPhotos()) {
+                photoCount++;
+                assertSame(p, index.photo(p.getId()));
+                assertSame(a, index.albumOf(p.getId()));
+                assertSame(p, index.photoIn(a, p.getId()));
+            }
+        }
+        assertEquals(albums.size(), index.albumCount());
+        assertEquals(photoCount, index.photoCount());
+    }
+}
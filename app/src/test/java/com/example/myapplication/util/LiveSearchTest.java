@@ -0,0 +1,109 @@
+package com.example.myapplication.util;
+
+import com.example.myapplication.model.Photo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the ranges from {@link LiveSearch#diff}, applied in order the way the results
+ * adapter does, turn the previous rows into the new ones.
+ */
+public class LiveSearchTest {
+
+    private final List<Photo> photos = new ArrayList<>();
+
+    public LiveSearchTest() {
+        for (int i = 0; i < 40; i++) photos.add(new Photo("/images/" + i + ".jpg"));
+    }
+
+    @Test
+    public void diff_identicalListsHaveNoChanges() {
+        assertTrue(LiveSearch.diff(rows(1, 2, 3), rows(1, 2, 3)).isEmpty());
+        assertTrue(LiveSearch.diff(rows(), rows()).isEmpty());
+    }
+
+    @Test
+    public void diff_coalescesRunsIntoRanges() {
+        List<LiveSearch.Change> changes = LiveSearch.diff(rows(0, 1, 2, 3, 4, 5), rows(0, 4, 5, 6, 7));
+        assertEquals(2, changes.size());
+        assertChange(changes.get(0), false, 1, 3);
+        assertChange(changes.get(1), true, 3, 2);
+        assertApplies(rows(0, 1, 2, 3, 4, 5), rows(0, 4, 5, 6, 7));
+    }
+
+    @Test
+    public void diff_fromAndToEmpty() {
+        List<LiveSearch.Change> changes = LiveSearch.diff(rows(), rows(3, 4, 5));
+        assertEquals(1, changes.size());
+        assertChange(changes.get(0), true, 0, 3);
+        changes = LiveSearch.diff(rows(3, 4, 5), rows());
+        assertEquals(1, changes.size());
+        assertChange(changes.get(0), false, 0, 3);
+    }
+
+    @Test
+    public void diff_interleavedInsertsAndRemoves() {
+        assertApplies(rows(1, 3, 5, 7), rows(0, 1, 2, 5, 6, 8));
+        assertApplies(rows(0, 2, 4, 6, 8), rows(1, 3, 5, 7, 9));
+    }
+
+    @Test
+    public void diff_reorderedRowsNeedFullRebind() {
+        assertNull(LiveSearch.diff(rows(1, 2, 3), rows(2, 1, 3)));
+        assertNull(LiveSearch.diff(rows(1, 2, 3), rows(3, 4, 1)));
+    }
+
+    @Test
+    public void diff_randomSubsetsOfOneOrder() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            assertApplies(randomSubset(random), randomSubset(random));
+        }
+    }
+
+    private List<Photo> randomSubset(Random random) {
+        List<Photo> subset = new ArrayList<>();
+        int density = 1 + random.nextInt(4);
+        for (Photo p : photos) {
+            if (random.nextInt(density + 1) != 0) subset.add(p);
+        }
+        return subset;
+    }
+
+    private static void assertApplies(List<Photo> before, List<Photo> after) {
+        List<LiveSearch.Change> changes = LiveSearch.diff(before, after);
+        assertNotNull(changes);
+        // The adapter only learns positions and counts; inserted rows come from the new list.
+        List<Photo> rows = new ArrayList<>(before);
+        for (LiveSearch.Change change : changes) {
+            assertTrue(change.count > 0);
+            if (change.insert) {
+                rows.addAll(change.position, after.subList(change.position, change.position + change.count));
+            } else {
+                rows.subList(change.position, change.position + change.count).clear();
+            }
+        }
+        assertEquals(after, rows);
+    }
+
+    private static void assertChange(LiveSearch.Change change, boolean insert, int position, int count) {
+        assertEquals(insert, change.insert);
+        assertEquals(position, change.position);
+        assertEquals(count, change.count);
+    }
+
+    private List<Photo> rows(int... indexes) {
+        if (indexes.length == 0) return Collections.emptyList();
+        Photo[] rows = new Photo[indexes.length];
+        for (int i = 0; i < indexes.length; i++) rows[i] = photos.get(indexes[i]);
+        return Arrays.asList(rows);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.myapplication.util;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+import com.example.myapplication.model.Tag;
+import com.example.myapplication.model.TagType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks TagIndex postings, prefix ranges, counts and ordinal reuse against the tags on
+ * the photos, and that results follow the index's order.
+ */
+public class TagIndexTest {
+
+    private List<Album> albums;
+    private TagIndex index;
+    private Photo ann;
+    private Photo anna;
+    private Photo annParis;
+    private Photo anton;
+
+    @Before
+    public void setUp() {
+        Album album = new Album("People");
+        ann = photo(album, "ann", person("Ann"));
+        anna = photo(album, "anna", person("Anna"));
+        annParis = photo(album, "ann_paris", person("ann"), location("Paris"));
+        anton = photo(album, "anton", person("Anton"), location("Annecy"));
+        albums = new ArrayList<>();
+        albums.add(album);
+        index = new TagIndex();
+        index.rebuild(albums);
+    }
+
+    @Test
+    public void exact_ignoresCaseAndType() {
+        assertEquals(Arrays.asList(ann, annParis), index.photos(index.exact(TagType.PERSON, "ANN")));
+        assertEquals(Arrays.asList(anton), index.photos(index.exact(TagType.LOCATION, "annecy")));
+        assertTrue(index.exact(TagType.LOCATION, "ann").isEmpty());
+        assertTrue(index.exact(TagType.PERSON, null).isEmpty());
+    }
+
+    @Test
+    public void prefix_coversExactlyTheValuesStartingWithIt() {
+        assertEquals(Arrays.asList(ann, anna, annParis), index.photos(index.prefix(TagType.PERSON, "Ann")));
+        assertEquals(Arrays.asList(ann, anna, annParis, anton), index.photos(index.prefix(TagType.PERSON, "an")));
+        assertEquals(Arrays.asList(anna), index.photos(index.prefix(TagType.PERSON, "anna")));
+        assertTrue(index.prefix(TagType.PERSON, "annab").isEmpty());
+        assertTrue(index.prefix(TagType.PERSON, "b").isEmpty());
+        assertEquals(Arrays.asList(ann, anna, annParis, anton), index.photos(index.prefix(TagType.PERSON, "")));
+        assertTrue(index.prefix(TagType.PERSON, null).isEmpty());
+    }
+
+    @Test
+    public void count_matchesPostings() {
+        assertEquals(2, index.count(TagType.PERSON, "ann", false));
+        assertEquals(3, index.count(TagType.PERSON, "ann", true));
+        assertEquals(0, index.count(TagType.PERSON, "bob", false));
+        assertEquals(0, index.count(TagType.LOCATION, "x", true));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void values_haveOneEntryPerValueIgnoringCase() {
+        assertEquals(Arrays.asList("Ann", "Anna", "Anton"), index.values(TagType.PERSON));
+        assertEquals(Arrays.asList("Ann", "Anna"), index.suggest(TagType.PERSON, "ann", 2));
+    }
+
+    @Test
+    public void tagChanges_updatePostings() {
+        Tag bob = person("Bob");
+        ann.addTag(bob);
+        index.addTag(ann, bob);
+        assertEquals(Arrays.asList(ann), index.photos(index.exact(TagType.PERSON, "bob")));
+        ann.removeTag(bob);
+        index.removeTag(ann, bob);
+        assertTrue(index.exact(TagType.PERSON, "bob").isEmpty());
+        assertEquals(Arrays.asList("Ann", "Anna", "Anton"), index.values(TagType.PERSON));
+        assertConsistent();
+    }
+
+    @Test
+    public void removedOrdinal_isReusedWithoutStalePostings() {
+        long before = index.version();
+        index.removePhoto(ann);
+        assertTrue(index.version() > before);
+        assertEquals(3, index.size());
+        assertEquals(Arrays.asList(annParis), index.photos(index.exact(TagType.PERSON, "ann")));
+
+        Photo bob = new Photo("/images/bob.jpg", "bob");
+        bob.addTag(person("Bob"));
+        albums.get(0).addPhoto(bob);
+        index.addPhoto(bob);
+        assertEquals(4, index.size());
+        // bob took over ann's ordinal, which must not still match ann's tags.
+        assertEquals(Arrays.asList(annParis), index.photos(index.exact(TagType.PERSON, "ann")));
+        assertEquals(Arrays.asList(bob), index.photos(index.exact(TagType.PERSON, "bob")));
+        assertSame(bob, index.getPhoto(bob.getId()));
+        assertNull(index.getPhoto(ann.getId()));
+        assertEquals(4, index.all().cardinality());
+        albums.get(0).removePhoto(ann);
+        assertConsistent();
+    }
+
+    @Test
+    public void photos_followTheIndexOrder() {
+        List<Photo> order = new ArrayList<>(Arrays.asList(anton, annParis, anna, ann));
+        TagIndex ordered = new TagIndex(order::indexOf);
+        ordered.rebuild(albums);
+        assertEquals(Arrays.asList(annParis, anna, ann), ordered.photos(ordered.prefix(TagType.PERSON, "ann")));
+
+        // A reused ordinal does not move the new photo to the old one's place.
+        ordered.removePhoto(ann);
+        Photo bob = new Photo("/images/bob.jpg", "bob");
+        bob.addTag(person("Anne"));
+        order.add(bob);
+        ordered.addPhoto(bob);
+        List<Photo> expected = Arrays.asList(annParis, anna, bob);
+        assertEquals(expected, ordered.photos(ordered.prefix(TagType.PERSON, "ann")));
+    }
+
+    private void assertConsistent() {
+        int count = 0;
+        for (Album a : albums) {
+            for (Photo p : a.getPhotos()) {
+                count++;
+                assertSame(p, index.getPhoto(p.getId()));
+                for (Tag t : p.getTags()) {
+                    BitSet matches = index.exact(t.getTagType(), t.getTagValue());
+                    assertTrue(t.toString(), index.photos(matches).contains(p));
+                }
+            }
+        }
+        assertEquals(count, index.size());
+        for (TagType type : TagType.values()) {
+            for (String value : index.values(type)) {
+                for (Photo p : index.photos(index.exact(type, value))) {
+                    assertTrue(value, p.hasTag(new Tag(type, value)));
+                }
+            }
+        }
+    }
+
+    private static Photo photo(Album album, String name, Tag... tags) {
+        Photo p = new Photo("/images/" + name + ".jpg", name);
+        for (Tag t : tags) p.addTag(t);
+        album.addPhoto(p);
+        return p;
+    }
+
+    private static Tag person(String value) {
+        return new Tag(TagType.PERSON, value);
+    }
+
+    private static Tag location(String value) {
+        return new Tag(TagType.LOCATION, value);
+    }
+}
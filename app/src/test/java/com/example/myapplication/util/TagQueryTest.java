@@ -0,0 +1,175 @@
+package com.example.myapplication.util;
+
+import com.example.myapplication.model.Album;
+import com.example.myapplication.model.Photo;
+import com.example.myapplication.model.Tag;
+import com.example.myapplication.model.TagType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks TagQuery parsing, and that evaluating a parsed query against a TagIndex matches
+ * the photos a direct check of their tags would pick.
+ */
+public class TagQueryTest {
+
+    private TagIndex index;
+    private Photo annParis;
+    private Photo annNewYork;
+    private Photo bobParis;
+    private Photo annaBob;
+    private Photo untagged;
+
+    @Before
+    public void setUp() {
+        Album album = new Album("Trips");
+        annParis = photo(album, "ann_paris", person("Ann"), location("Paris"));
+        annNewYork = photo(album, "ann_ny", person("Ann"), location("New York"));
+        bobParis = photo(album, "bob_paris", person("Bob"), location("Paris"));
+        annaBob = photo(album, "anna_bob", person("Anna"), person("Bob"));
+        untagged = photo(album, "untagged");
+        List<Album> albums = new ArrayList<>();
+        albums.add(album);
+        index = new TagIndex();
+        index.rebuild(albums);
+    }
+
+    @Test
+    public void term_prefixAndExact() {
+        assertMatches("person:ann", annParis, annNewYork, annaBob);
+        assertMatches("person=ann", annParis, annNewYork);
+        assertMatches("PERSON=ANN", annParis, annNewYork);
+        assertMatches("location:z");
+    }
+
+    @Test
+    public void quotedValue_keepsSpaces() {
+        assertMatches("location=\"New York\"", annNewYork);
+        assertMatches("location:\"new y\"", annNewYork);
+        assertEquals("location=\"New York\"", TagQuery.parse("location=\"New York\"").toString());
+    }
+
+    @Test
+    public void adjacentTerms_areAnded() {
+        assertMatches("person:ann location:paris", annParis);
+        assertMatches("person:ann AND location:paris", annParis);
+        assertMatches("person:ann & location:paris", annParis);
+    }
+
+    @Test
+    public void andBindsTighterThanOr() {
+        // person=bob OR (person=ann AND location=paris)
+        assertMatches("person=bob | person=ann location=paris", annParis, bobParis, annaBob);
+        assertMatches("(person=bob | person=ann) location=paris", annParis, bobParis);
+        assertEquals("person=bob OR (person=ann AND location=paris)",
+                TagQuery.parse("person=bob OR person=ann AND location=paris").toString());
+    }
+
+    @Test
+    public void negation_subtractsFromTheRest() {
+        assertMatches("person:ann -location:paris", annNewYork, annaBob);
+        assertMatches("person:ann NOT location:paris", annNewYork, annaBob);
+        assertMatches("person:ann !(location:paris | location:new)", annaBob);
+        assertMatches("NOT NOT person=bob", bobParis, annaBob);
+    }
+
+    @Test
+    public void negationOnly_matchesEveryOtherPhoto() {
+        assertMatches("-person:ann", bobParis, untagged);
+        assertMatches("-person:ann -location:paris", untagged);
+    }
+
+    @Test
+    public void parseErrors_areReported() {
+        assertParseError("");
+        assertParseError("ann");
+        assertParseError("colour:red");
+        assertParseError("person");
+        assertParseError("person:");
+        assertParseError("person:\"ann");
+        assertParseError("(person:ann");
+        assertParseError("person:ann)");
+        assertParseError("person:ann |");
+        assertParseError("NOT");
+    }
+
+    @Test
+    public void refine_equalsFullEvaluate() {
+        String[][] steps = {
+                {"person:a", "person:an"},
+                {"person:an", "person:ann"},
+                {"person:a location:p", "person:an location:pa"},
+                {"person:ann location=paris", "person:ann location=paris"},
+        };
+        for (String[] step : steps) {
+            TagQuery previous = TagQuery.parse(step[0]);
+            TagQuery next = TagQuery.parse(step[1]);
+            BitSet refined = next.refine(previous, previous.evaluate(index), index);
+            assertNotNull(step[1], refined);
+            assertEquals(step[1], next.evaluate(index), refined);
+        }
+    }
+
+    @Test
+    public void refine_rejectsQueriesThatDoNotNarrow() {
+        assertNotRefinement("person:ann", "person:bob");
+        assertNotRefinement("person:ann", "person:an");
+        assertNotRefinement("person=an", "person=ann");
+        assertNotRefinement("person:ann", "person:ann location:paris");
+        assertNotRefinement("person:ann | person:bob", "person:ann | person:bobby");
+        assertNotRefinement("person:ann", "-person:ann");
+    }
+
+    private void assertMatches(String query, Photo... expected) {
+        List<Photo> actual = index.photos(TagQuery.parse(query).evaluate(index));
+        List<String> actualNames = names(actual);
+        List<String> expectedNames = new ArrayList<>();
+        for (Photo p : expected) expectedNames.add(p.getFilename());
+        Collections.sort(actualNames);
+        Collections.sort(expectedNames);
+        assertEquals(query, expectedNames, actualNames);
+    }
+
+    private void assertParseError(String query) {
+        try {
+            TagQuery.parse(query);
+            fail("Parsed malformed query '" + query + "'");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("position"));
+        }
+    }
+
+    private void assertNotRefinement(String before, String after) {
+        TagQuery previous = TagQuery.parse(before);
+        assertNull(after, TagQuery.parse(after).refine(previous, previous.evaluate(index), index));
+    }
+
+    private static List<String> names(List<Photo> photos) {
+        List<String> names = new ArrayList<>();
+        for (Photo p : photos) names.add(p.getFilename());
+        return names;
+    }
+
+    private static Photo photo(Album album, String name, Tag... tags) {
+        Photo p = new Photo("/images/" + name + ".jpg", name);
+        for (Tag t : tags) p.addTag(t);
+        album.addPhoto(p);
+        return p;
+    }
+
+    private static Tag person(String value) {
+        return new Tag(TagType.PERSON, value);
+    }
+
+    private static Tag location(String value) {
+        return new Tag(TagType.LOCATION, value);
+    }
+}